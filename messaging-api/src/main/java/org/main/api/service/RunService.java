@@ -1,8 +1,6 @@
 package org.main.api.service;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 import org.main.api.dto.EventDto;
 import org.main.api.dto.RunConfig;
@@ -91,7 +89,7 @@ public class RunService {
 		runState = RunState.IDLE;
 		
 		if(deleteDiskQueueFile) {
-			Files.deleteIfExists(Path.of("tasks.queue"));
+			MessagingEngine.deleteSpoolFiles();
 		}
 	}
 	
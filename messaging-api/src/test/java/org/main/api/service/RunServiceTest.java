@@ -78,6 +78,19 @@ public class RunServiceTest {
         assertThat(Files.exists(Path.of("tasks.queue"))).isFalse();
 	}
 	
+	@Test
+	void reset_true_shouldDeleteEveryLaneSpool() throws IOException{
+		Files.writeString(Path.of("tasks.queue"), "dummy");
+		Files.writeString(Path.of("tasks-urgent.queue"), "dummy");
+		Files.writeString(Path.of("tasks-bulk.queue.p1"), "dummy");
+		
+		runService.reset(true);
+		
+		assertThat(Files.exists(Path.of("tasks.queue"))).isFalse();
+		assertThat(Files.exists(Path.of("tasks-urgent.queue"))).isFalse();
+		assertThat(Files.exists(Path.of("tasks-bulk.queue.p1"))).isFalse();
+	}
+	
 	@Test
 	void reset_false_shouldNotDeleteQueueFile() throws IOException{
 		Files.writeString(Path.of("tasks.queue"), "dummy");
@@ -0,0 +1,84 @@
+package org.main.engine.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.main.engine.dto.DiskRecord;
+import org.main.engine.service.DiskQueueOptions;
+import org.main.engine.service.FileDiskQueue;
+import org.main.engine.service.FlushPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the allocation cost of the {@link FileDiskQueue} hot paths.
+ *
+ * <p>Run with the GC profiler and read {@code gc.alloc.rate.norm}:
+ * <pre>
+ * mvn -P jmh package exec:exec -Djmh.args="DiskQueueAllocationBenchmark -prof gc"
+ * </pre>
+ *
+ * <p>Targets (checked in a cheaper form by {@code FileDiskQueueTest}):
+ * <ul>
+ *   <li>{@code append}: at most 16 B/op, i.e. no per-record allocation</li>
+ *   <li>{@code appendThenPoll}: at most payload + 128 B/op, i.e. only the record handed to the caller</li>
+ * </ul>
+ *
+ * <p>Flushing is effectively disabled so the numbers reflect the queue, not fsync.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiskQueueAllocationBenchmark {
+
+	@Param({"128", "4096"})
+	int payloadBytes;
+
+	private Path dir;
+	private FileDiskQueue queue;
+	private ByteBuffer payload;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("disk-queue-bench");
+		queue = new FileDiskQueue(dir.resolve("bench.queue").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(FlushPolicy.everyRecords(Integer.MAX_VALUE)));
+		payload = ByteBuffer.allocateDirect(payloadBytes);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		queue.close();
+		Files.deleteIfExists(dir);
+	}
+
+	@Benchmark
+	public long append() throws IOException {
+		return queue.append(payload);
+	}
+
+	@Benchmark
+	public DiskRecord appendThenPoll() throws IOException {
+		queue.append(payload);
+		DiskRecord rec = queue.poll();
+		queue.ack(rec.nextPos()); // lets the queue reclaim segments during long runs
+		return rec;
+	}
+}
@@ -0,0 +1,78 @@
+package org.main.engine.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.main.engine.service.DiskQueueOptions;
+import org.main.engine.service.FileDiskQueue;
+import org.main.engine.service.FlushPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of a flushed {@link FileDiskQueue} append with and without
+ * segment preallocation.
+ *
+ * <p>Every append is forced ({@link FlushPolicy#always()}), so the numbers are dominated
+ * by the fsync. Without preallocation each fsync also has to persist the new file size;
+ * compare the percentiles of both {@code preallocateBytes} values:
+ * <pre>
+ * mvn -P jmh package exec:exec -Djmh.args="DiskQueueAppendLatencyBenchmark"
+ * </pre>
+ *
+ * <p>Files are created under {@code java.io.tmpdir}; point it at the file system the
+ * spool lives on, since tmpfs ignores fsync entirely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiskQueueAppendLatencyBenchmark {
+
+	@Param({"0", "4194304"})
+	long preallocateBytes;
+
+	@Param({"512"})
+	int payloadBytes;
+
+	private Path dir;
+	private FileDiskQueue queue;
+	private ByteBuffer payload;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("disk-queue-bench");
+		queue = new FileDiskQueue(dir.resolve("bench.queue").toString(),
+				DiskQueueOptions.defaults()
+					.withFlushPolicy(FlushPolicy.always())
+					.withPreallocateBytes(preallocateBytes));
+		payload = ByteBuffer.allocateDirect(payloadBytes);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		queue.close();
+		Files.deleteIfExists(dir);
+	}
+
+	@Benchmark
+	public long flushedAppend() throws IOException {
+		return queue.append(payload);
+	}
+}
@@ -0,0 +1,76 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the admission and hand-off cost of the {@link ExecutionStage} implementations.
+ *
+ * <p>Four producer threads reserve capacity and hand over an empty task that releases its
+ * reservation; a producer spins while the stage is full. The score is tasks handed over per
+ * microsecond, so it measures the stage itself, not the work:
+ * <pre>
+ * mvn -P jmh package exec:exec -Djmh.args="ExecutionStageBenchmark -prof gc"
+ * </pre>
+ *
+ * <p>{@code gc.alloc.rate.norm} shows the queue node the thread pool allocates per task
+ * on top of the task itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ExecutionStageBenchmark {
+
+	@Param({"THREAD_POOL", "RING_BUFFER", "FORK_JOIN"})
+	StageType stageType;
+
+	@Param({"SPIN", "PARK"})
+	WaitStrategy waitStrategy;
+
+	@Param({"4"})
+	int workers;
+
+	@Param({"1024"})
+	int queueCapacity;
+
+	private ExecutionStage stage;
+	private Runnable task;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stage = ExecutionStage.create(stageType, workers, queueCapacity, waitStrategy);
+		task = () -> stage.release(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		stage.shutdown();
+		stage.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void reserveAndExecute() {
+		while(!stage.tryReserve()) {
+			Thread.onSpinWait();
+		}
+		stage.execute(task);
+	}
+}
@@ -0,0 +1,80 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how task throughput scales with the number of workers for short CPU-bound tasks.
+ *
+ * <p>Four producer threads reserve capacity and hand over tasks that burn {@code work}
+ * Blackhole tokens (a few microseconds by default) before releasing their reservation.
+ * With sub-millisecond tasks the hand-off dominates, so a stage whose workers share one
+ * queue stops scaling before one whose workers have their own deques:
+ * <pre>
+ * mvn -P jmh package exec:exec -Djmh.args="StageScalingBenchmark -p workers=1,2,4,8"
+ * </pre>
+ *
+ * <p>Set {@code workers} up to the number of cores; the score is tasks per millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class StageScalingBenchmark {
+
+	@Param({"THREAD_POOL", "FORK_JOIN"})
+	StageType stageType;
+
+	@Param({"1", "2", "4", "8"})
+	int workers;
+
+	@Param({"1024"})
+	int queueCapacity;
+
+	@Param({"2000"})
+	long work;
+
+	private ExecutionStage stage;
+	private Runnable task;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stage = ExecutionStage.create(stageType, workers, queueCapacity, WaitStrategy.PARK);
+		task = () -> {
+			Blackhole.consumeCPU(work);
+			stage.release(1);
+		};
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		stage.shutdown();
+		stage.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void reserveAndExecute() {
+		while(!stage.tryReserve()) {
+			Thread.onSpinWait();
+		}
+		stage.execute(task);
+	}
+}
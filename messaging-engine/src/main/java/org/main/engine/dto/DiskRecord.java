@@ -1,3 +1,38 @@
 package org.main.engine.dto;
 
-public record DiskRecord(long nextPos, String message) {}
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A record read from a {@code DiskQueue}.
+ *
+ * @param offset number of records appended to the queue before this one,
+ *               or {@code -1} if the queue does not number its records
+ * @param nextPos queue position right after this record, used to acknowledge it
+ * @param payload the raw record bytes; may be a view into a shared or mapped buffer
+ */
+public record DiskRecord(long offset, long nextPos, ByteBuffer payload) {
+	
+	public DiskRecord(long nextPos, ByteBuffer payload) {
+		this(-1L, nextPos, payload);
+	}
+	
+	public DiskRecord(long nextPos, String message) {
+		this(nextPos, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * @return an independent view of the payload (position 0, limit = length)
+	 */
+	@Override
+	public ByteBuffer payload() {
+		return payload.duplicate();
+	}
+	
+	/**
+	 * @return the payload decoded as UTF-8
+	 */
+	public String message() {
+		return StandardCharsets.UTF_8.decode(payload()).toString();
+	}
+}
@@ -0,0 +1,63 @@
+package org.main.engine.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message handled by the engine: an id plus an opaque binary payload.
+ *
+ * <p>{@code text} marks payloads that were submitted as strings, so they can be
+ * shown as text in engine events. Binary payloads are never decoded.
+ *
+ * <p>Messages with the same non-null {@code key} are processed one at a time, in the
+ * order they were submitted.
+ *
+ * @param id message id used in engine events
+ * @param payload message bytes; not copied by the engine until it is spilled to disk
+ * @param text whether the payload holds UTF-8 text
+ * @param key ordering key, or {@code null} if the message may run in any order
+ */
+public record Message(String id, ByteBuffer payload, boolean text, String key) {
+	
+	public Message(String id, ByteBuffer payload, boolean text) {
+		this(id, payload, text, null);
+	}
+	
+	public static Message ofText(String id, String text) {
+		return new Message(id, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), true);
+	}
+	
+	public static Message ofBytes(String id, ByteBuffer payload) {
+		return new Message(id, payload, false);
+	}
+	
+	public Message withKey(String key) {
+		return new Message(id, payload, text, key);
+	}
+	
+	/**
+	 * @return an independent view of the payload
+	 */
+	@Override
+	public ByteBuffer payload() {
+		return payload.duplicate();
+	}
+	
+	public int size() {
+		return payload.remaining();
+	}
+	
+	/**
+	 * @return the payload decoded as UTF-8
+	 */
+	public String payloadAsString() {
+		return StandardCharsets.UTF_8.decode(payload()).toString();
+	}
+	
+	/**
+	 * @return the text payload, or a size summary for binary payloads
+	 */
+	public String describe() {
+		return text ? payloadAsString() : "[" + size() + " bytes]";
+	}
+}
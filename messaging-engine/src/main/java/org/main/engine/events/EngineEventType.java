@@ -7,5 +7,9 @@ public enum EngineEventType {
 	STARTED_TASK_PROCESSING,
 	TASK_COMPLETED,
 	TASK_FAILED_TO_EXECUTE,
+	SEGMENT_EVICTED_BY_RETENTION,
+	CONCURRENCY_LIMIT_CHANGED,
+	TASK_DROPPED,
+	TASK_REJECTED,
 	RUN_IDLE
 }
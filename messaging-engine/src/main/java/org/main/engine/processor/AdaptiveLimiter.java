@@ -0,0 +1,144 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD concurrency limit driven by task latency, as configured by {@link ConcurrencyLimitPolicy}.
+ *
+ * <p>Tasks report {@link #onStart()} and {@link #onComplete(long, boolean)}. Samples are
+ * only added up on that path; once per window the thread completing a task evaluates the
+ * window and, if the limit changes, passes a {@link LimitChange} to the listener. Windows
+ * are evaluated by one thread at a time, so changes reach the listener in order.
+ *
+ * <p>The long-term latency is an exponential moving average of the window averages; it
+ * follows a lasting change in downstream latency, so the limit recovers after it.
+ */
+final class AdaptiveLimiter {
+	private static final double LONG_TERM_SMOOTHING = 0.1;
+
+	private final ConcurrencyLimitPolicy policy;
+	private final Consumer<LimitChange> listener;
+	private final LongSupplier nanoClock;
+	private final long windowNanos;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+	private final LongAdder samples = new LongAdder();
+	private final LongAdder latencyNanos = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final AtomicBoolean evaluating = new AtomicBoolean();
+
+	// Written only while evaluating
+	private volatile int limit;
+	private volatile long windowStart;
+	private double longTermLatencyNanos;
+
+	AdaptiveLimiter(ConcurrencyLimitPolicy policy, int initialLimit, Consumer<LimitChange> listener) {
+		this(policy, initialLimit, listener, System::nanoTime);
+	}
+
+	AdaptiveLimiter(ConcurrencyLimitPolicy policy, int initialLimit, Consumer<LimitChange> listener, LongSupplier nanoClock) {
+		if(!policy.isEnabled()) { throw new IllegalArgumentException("concurrency limit policy is disabled"); }
+		this.policy = policy;
+		this.listener = listener;
+		this.nanoClock = nanoClock;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(policy.windowMs());
+		this.limit = policy.clamp(initialLimit);
+		this.windowStart = nanoClock.getAsLong();
+	}
+
+	/**
+	 * @return the current limit
+	 */
+	int limit() {
+		return limit;
+	}
+
+	/**
+	 * Records that a task started running.
+	 */
+	void onStart() {
+		int running = inFlight.incrementAndGet();
+		peakInFlight.accumulateAndGet(running, Math::max);
+	}
+
+	/**
+	 * Records that a task finished and evaluates the window if it is over.
+	 *
+	 * @param taskNanos time from {@link #onStart()} to completion
+	 * @param failed whether the task failed
+	 */
+	void onComplete(long taskNanos, boolean failed) {
+		inFlight.decrementAndGet();
+		samples.increment();
+		latencyNanos.add(taskNanos);
+		if(failed) failures.increment();
+
+		long now = nanoClock.getAsLong();
+		if(now - windowStart >= windowNanos && evaluating.compareAndSet(false, true)) {
+			try {
+				evaluate(now);
+			}finally {
+				evaluating.set(false);
+			}
+		}
+	}
+
+	private void evaluate(long now) {
+		long elapsed = now - windowStart;
+		long count = samples.sumThenReset();
+		long total = latencyNanos.sumThenReset();
+		long failed = failures.sumThenReset();
+		int peak = peakInFlight.getAndSet(inFlight.get());
+		windowStart = now;
+		if(count == 0) return;
+
+		double average = (double) total / count;
+		double longTerm = longTermLatencyNanos == 0 ? average : longTermLatencyNanos;
+		longTermLatencyNanos = longTerm + LONG_TERM_SMOOTHING * (average - longTerm);
+
+		int current = limit;
+		int next = current;
+		String reason;
+		if(failed > 0) {
+			next = backOff(current);
+			reason = "failures";
+		}else if(average > longTerm * policy.latencyTolerance()) {
+			next = backOff(current);
+			reason = "latency";
+		}else if(peak >= current) {
+			next = Math.min(policy.maxThreads(), current + 1);
+			reason = "saturated";
+		}else {
+			return;
+		}
+		if(next == current) return;
+
+		limit = next;
+		listener.accept(new LimitChange(current, next, reason,
+				average / TimeUnit.MILLISECONDS.toNanos(1),
+				count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed,
+				peak));
+	}
+
+	private int backOff(int current) {
+		return Math.max(policy.minThreads(), Math.min(current - 1, (int) (current * policy.backoffRatio())));
+	}
+
+	/**
+	 * One adjustment of the limit and the window that caused it.
+	 *
+	 * @param from previous limit
+	 * @param to new limit
+	 * @param reason {@code failures}, {@code latency} or {@code saturated}
+	 * @param averageLatencyMs average task latency in the window
+	 * @param throughputPerSecond completed tasks per second in the window
+	 * @param peakInFlight most tasks running at once in the window
+	 */
+	record LimitChange(int from, int to, String reason, double averageLatencyMs, double throughputPerSecond, int peakInFlight) {}
+}
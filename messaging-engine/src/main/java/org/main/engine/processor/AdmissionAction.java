@@ -0,0 +1,36 @@
+package org.main.engine.processor;
+
+/**
+ * What {@link WorkerThreadPoolProcessor#submitTask(String)} does with a task that cannot
+ * start in memory right away, because capacity or the rate limit is exhausted or older
+ * tasks of its lane are still on disk.
+ */
+public enum AdmissionAction {
+	/**
+	 * Append the task to its lane's spool; it runs once the drainer gets to it.
+	 */
+	SPILL,
+	
+	/**
+	 * Block the producer until the task can start in memory, up to
+	 * {@link AdmissionPolicy#blockTimeoutMs()}; then give up with {@link AdmissionResult#TIMED_OUT}.
+	 */
+	BLOCK_WITH_TIMEOUT,
+	
+	/**
+	 * Spill the task, first dropping the oldest spooled task of its partition once the
+	 * partition holds {@link AdmissionPolicy#maxSpooledRecords()}.
+	 */
+	DROP_OLDEST,
+	
+	/**
+	 * Spill the task while its partition holds fewer than {@link AdmissionPolicy#maxSpooledRecords()},
+	 * otherwise drop it.
+	 */
+	DROP_NEWEST,
+	
+	/**
+	 * Refuse the task with {@link AdmissionResult#REJECTED}, so the producer can back off.
+	 */
+	REJECT
+}
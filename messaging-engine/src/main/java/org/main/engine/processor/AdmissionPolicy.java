@@ -0,0 +1,82 @@
+package org.main.engine.processor;
+
+import java.util.Objects;
+
+/**
+ * How {@link WorkerThreadPoolProcessor} admits submitted tasks.
+ *
+ * <p>A task starts in memory if its lane has no backlog on disk, capacity can be reserved
+ * and, with a rate limit, the token bucket has a token. Otherwise {@code action} decides.
+ * The rate limit sits in front of the capacity check and refills at {@code ratePerSecond}
+ * up to {@code rateBurst} tokens. It limits how fast tasks start, whatever the action:
+ * a spilled task takes its token when it is recovered from disk, so with
+ * {@link AdmissionAction#SPILL} the limit paces execution while producers keep spooling.
+ *
+ * <p>Use one of the factories and {@link #withRateLimit(double, int)}:
+ * <pre>
+ * AdmissionPolicy.block(250).withRateLimit(1_000, 100)
+ * </pre>
+ *
+ * @param action what to do with a task that cannot start right away
+ * @param blockTimeoutMs how long {@link AdmissionAction#BLOCK_WITH_TIMEOUT} waits
+ * @param maxSpooledRecords spool size per partition at which the drop actions drop a task
+ * @param ratePerSecond sustained admissions per second; {@code 0} for no rate limit
+ * @param rateBurst tokens the bucket holds, i.e. admissions allowed at once after an idle period
+ */
+public record AdmissionPolicy(AdmissionAction action, 
+							long blockTimeoutMs, 
+							long maxSpooledRecords, 
+							double ratePerSecond, 
+							int rateBurst) {
+
+	public AdmissionPolicy {
+		Objects.requireNonNull(action, "action");
+		if(blockTimeoutMs < 0) { throw new IllegalArgumentException("blockTimeoutMs must be >= 0"); }
+		if(maxSpooledRecords < 0) { throw new IllegalArgumentException("maxSpooledRecords must be >= 0"); }
+		if(action == AdmissionAction.BLOCK_WITH_TIMEOUT && blockTimeoutMs == 0) {
+			throw new IllegalArgumentException("BLOCK_WITH_TIMEOUT needs blockTimeoutMs more than 0");
+		}
+		if(action == AdmissionAction.DROP_OLDEST && maxSpooledRecords == 0) {
+			throw new IllegalArgumentException("DROP_OLDEST needs maxSpooledRecords more than 0");
+		}
+		if(ratePerSecond < 0) { throw new IllegalArgumentException("ratePerSecond must be >= 0"); }
+		if(ratePerSecond > 0 && rateBurst <= 0) { throw new IllegalArgumentException("rateBurst must be more than 0"); }
+	}
+
+	/**
+	 * Spills whatever cannot start in memory, without a rate limit: the original behavior.
+	 */
+	public static AdmissionPolicy spill() {
+		return new AdmissionPolicy(AdmissionAction.SPILL, 0L, 0L, 0.0, 0);
+	}
+
+	public static AdmissionPolicy block(long timeoutMs) {
+		return new AdmissionPolicy(AdmissionAction.BLOCK_WITH_TIMEOUT, timeoutMs, 0L, 0.0, 0);
+	}
+
+	public static AdmissionPolicy dropOldest(long maxSpooledRecords) {
+		return new AdmissionPolicy(AdmissionAction.DROP_OLDEST, 0L, maxSpooledRecords, 0.0, 0);
+	}
+
+	/**
+	 * @param maxSpooledRecords tasks spilled per partition before new ones are dropped; {@code 0} drops instead of spilling
+	 */
+	public static AdmissionPolicy dropNewest(long maxSpooledRecords) {
+		return new AdmissionPolicy(AdmissionAction.DROP_NEWEST, 0L, maxSpooledRecords, 0.0, 0);
+	}
+
+	public static AdmissionPolicy reject() {
+		return new AdmissionPolicy(AdmissionAction.REJECT, 0L, 0L, 0.0, 0);
+	}
+
+	public AdmissionPolicy withRateLimit(double ratePerSecond, int rateBurst) {
+		return new AdmissionPolicy(action, blockTimeoutMs, maxSpooledRecords, ratePerSecond, rateBurst);
+	}
+
+	/**
+	 * @return {@code true} if a token bucket limits admissions
+	 */
+	public boolean isRateLimited() {
+		return ratePerSecond > 0;
+	}
+}
@@ -0,0 +1,24 @@
+package org.main.engine.processor;
+
+/**
+ * What happened to a submitted task, as returned by the {@code submitTask} methods.
+ */
+public enum AdmissionResult {
+	/** Started in memory. */
+	ACCEPTED,
+	/** Written to disk; it runs when the drainer gets to it. */
+	SPILLED,
+	/** Dropped by {@link AdmissionAction#DROP_NEWEST}. */
+	DROPPED,
+	/** Refused by {@link AdmissionAction#REJECT}. */
+	REJECTED,
+	/** Refused by {@link AdmissionAction#BLOCK_WITH_TIMEOUT} after waiting the whole timeout. */
+	TIMED_OUT;
+	
+	/**
+	 * @return {@code true} if the engine will run the task
+	 */
+	public boolean isAdmitted() {
+		return this == ACCEPTED || this == SPILLED;
+	}
+}
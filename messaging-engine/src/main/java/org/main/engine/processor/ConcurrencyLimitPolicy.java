@@ -0,0 +1,81 @@
+package org.main.engine.processor;
+
+/**
+ * Bounds and tuning of the adaptive concurrency limit of {@link WorkerThreadPoolProcessor}.
+ *
+ * <p>When enabled, the engine measures how long each task takes from start to completion
+ * and adjusts the number of concurrently running tasks once per window, AIMD style: it
+ * backs off by {@code backoffRatio} when the window's average latency exceeds
+ * {@code latencyTolerance} times the long-term average or a task failed, and adds one
+ * thread when the window used the whole limit. The permit budget follows the limit, so
+ * the waiting capacity stays {@code queueCapacity}.
+ *
+ * <p>Use {@link #none()} or {@link #between(int, int)} and the {@code with*} methods:
+ * <pre>
+ * ConcurrencyLimitPolicy.between(2, 64).withWindowMs(500)
+ * </pre>
+ *
+ * @param minThreads lowest limit; {@code 0} disables the limiter
+ * @param maxThreads highest limit; {@code 0} disables the limiter
+ * @param windowMs how often the limit is reevaluated
+ * @param latencyTolerance how much slower than the long-term average a window may be before backing off
+ * @param backoffRatio factor applied to the limit when backing off
+ */
+public record ConcurrencyLimitPolicy(int minThreads, 
+									int maxThreads, 
+									long windowMs, 
+									double latencyTolerance, 
+									double backoffRatio) {
+	public static final long DEFAULT_WINDOW_MS = 1000L;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+	public ConcurrencyLimitPolicy {
+		if(minThreads < 0 || maxThreads < 0) { throw new IllegalArgumentException("minThreads and maxThreads must be >= 0"); }
+		if(minThreads > maxThreads) { throw new IllegalArgumentException("minThreads must not be more than maxThreads"); }
+		if(maxThreads > 0 && minThreads == 0) { throw new IllegalArgumentException("minThreads must be more than 0"); }
+		if(windowMs <= 0) { throw new IllegalArgumentException("windowMs must be more than 0"); }
+		if(latencyTolerance < 1.0) { throw new IllegalArgumentException("latencyTolerance must be >= 1"); }
+		if(backoffRatio <= 0.0 || backoffRatio >= 1.0) { throw new IllegalArgumentException("backoffRatio must be in (0, 1)"); }
+	}
+
+	/**
+	 * Keeps the thread count fixed at construction.
+	 */
+	public static ConcurrencyLimitPolicy none() {
+		return new ConcurrencyLimitPolicy(0, 0, DEFAULT_WINDOW_MS, DEFAULT_LATENCY_TOLERANCE, DEFAULT_BACKOFF_RATIO);
+	}
+
+	/**
+	 * Adapts the thread count between the given bounds with default tuning.
+	 */
+	public static ConcurrencyLimitPolicy between(int minThreads, int maxThreads) {
+		return new ConcurrencyLimitPolicy(minThreads, maxThreads, DEFAULT_WINDOW_MS, DEFAULT_LATENCY_TOLERANCE, DEFAULT_BACKOFF_RATIO);
+	}
+
+	public ConcurrencyLimitPolicy withWindowMs(long windowMs) {
+		return new ConcurrencyLimitPolicy(minThreads, maxThreads, windowMs, latencyTolerance, backoffRatio);
+	}
+
+	public ConcurrencyLimitPolicy withLatencyTolerance(double latencyTolerance) {
+		return new ConcurrencyLimitPolicy(minThreads, maxThreads, windowMs, latencyTolerance, backoffRatio);
+	}
+
+	public ConcurrencyLimitPolicy withBackoffRatio(double backoffRatio) {
+		return new ConcurrencyLimitPolicy(minThreads, maxThreads, windowMs, latencyTolerance, backoffRatio);
+	}
+
+	/**
+	 * @return {@code true} if the limit adapts at runtime
+	 */
+	public boolean isEnabled() {
+		return maxThreads > 0;
+	}
+
+	/**
+	 * @return {@code threads} clamped to the bounds
+	 */
+	public int clamp(int threads) {
+		return Math.max(minThreads, Math.min(maxThreads, threads));
+	}
+}
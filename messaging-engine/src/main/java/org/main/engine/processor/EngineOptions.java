@@ -0,0 +1,102 @@
+package org.main.engine.processor;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.main.engine.service.DiskQueueOptions;
+
+/**
+ * Engine-level tuning options for {@link WorkerThreadPoolProcessor}.
+ *
+ * <p>Use {@link #defaults()} and the {@code with*} methods to derive a configuration:
+ * <pre>
+ * EngineOptions.defaults().withDiskPartitions(4).withSpillMode(SpillMode.ASYNC)
+ * </pre>
+ *
+ * @param diskOptions options of every disk queue partition
+ * @param diskPartitions number of disk queue partitions, each with its own drainer thread
+ * @param spillMode how overflowing tasks are written to disk
+ * @param spillBufferRecords staging ring size per partition for {@link SpillMode#ASYNC}
+ * @param stageType which in-memory stage runs the tasks
+ * @param waitStrategy how idle workers of a {@link StageType#RING_BUFFER} stage wait
+ * @param concurrencyLimit bounds for adapting the thread count at runtime; not supported by {@link StageType#RING_BUFFER}
+ * @param priorityLanes task classes with their own spool and capacity share; the first is the default lane
+ * @param admissionPolicy rate limit and what to do with submitted tasks that cannot start in memory
+ */
+public record EngineOptions(DiskQueueOptions diskOptions, 
+							int diskPartitions, 
+							SpillMode spillMode, 
+							int spillBufferRecords,
+							StageType stageType,
+							WaitStrategy waitStrategy,
+							ConcurrencyLimitPolicy concurrencyLimit,
+							List<PriorityLane> priorityLanes,
+							AdmissionPolicy admissionPolicy) {
+	public static final int DEFAULT_SPILL_BUFFER_RECORDS = 4096;
+
+	public EngineOptions {
+		Objects.requireNonNull(diskOptions, "diskOptions");
+		Objects.requireNonNull(spillMode, "spillMode");
+		Objects.requireNonNull(stageType, "stageType");
+		Objects.requireNonNull(waitStrategy, "waitStrategy");
+		Objects.requireNonNull(concurrencyLimit, "concurrencyLimit");
+		priorityLanes = List.copyOf(priorityLanes);
+		Objects.requireNonNull(admissionPolicy, "admissionPolicy");
+		if(diskPartitions <= 0) { throw new IllegalArgumentException("diskPartitions must be more than 0"); }
+		if(spillBufferRecords <= 0) { throw new IllegalArgumentException("spillBufferRecords must be more than 0"); }
+		if(concurrencyLimit.isEnabled() && stageType == StageType.RING_BUFFER) {
+			throw new IllegalArgumentException("the ring buffer stage has a fixed number of workers and cannot adapt its concurrency");
+		}
+		if(priorityLanes.isEmpty()) { throw new IllegalArgumentException("priorityLanes must not be empty"); }
+		if(priorityLanes.stream().map(PriorityLane::name).distinct().count() != priorityLanes.size()) {
+			throw new IllegalArgumentException("priority lane names must be unique");
+		}
+	}
+
+	/**
+	 * Options matching the original behavior: one disk queue with default options,
+	 * written by the submitting threads, tasks run on a fixed-size thread pool.
+	 */
+	public static EngineOptions defaults() {
+		return new EngineOptions(DiskQueueOptions.defaults(), 1, SpillMode.GROUP_COMMIT, DEFAULT_SPILL_BUFFER_RECORDS,
+								StageType.THREAD_POOL, WaitStrategy.PARK, ConcurrencyLimitPolicy.none(), List.of(PriorityLane.DEFAULT), 
+								AdmissionPolicy.spill());
+	}
+
+	public EngineOptions withDiskOptions(DiskQueueOptions diskOptions) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withDiskPartitions(int diskPartitions) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withSpillMode(SpillMode spillMode) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withSpillBufferRecords(int spillBufferRecords) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withStageType(StageType stageType) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withWaitStrategy(WaitStrategy waitStrategy) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withConcurrencyLimit(ConcurrencyLimitPolicy concurrencyLimit) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+	public EngineOptions withPriorityLanes(List<PriorityLane> priorityLanes) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+
+
+	public EngineOptions withAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+		return new EngineOptions(diskOptions, diskPartitions, spillMode, spillBufferRecords, stageType, waitStrategy, concurrencyLimit, priorityLanes, admissionPolicy);
+	}
+}
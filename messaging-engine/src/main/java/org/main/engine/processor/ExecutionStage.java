@@ -0,0 +1,115 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of {@link WorkerThreadPoolProcessor}: a bounded amount of
+ * capacity (running plus waiting tasks) and the workers that run the tasks.
+ *
+ * <p>Callers reserve capacity first and only then {@link #execute(Runnable)} a task;
+ * the task itself gives its reservation back with {@link #release(int)} when it is
+ * done. Reservations that end up unused are released directly.
+ */
+interface ExecutionStage {
+	String VIRTUAL_THREAD_STAGE = "org.main.engine.processor.VirtualThreadStage";
+	
+	/**
+     * Creates the stage selected by {@code stageType}.
+     *
+     * @param threads worker threads (also part of the capacity for {@link StageType#VIRTUAL_THREADS})
+     * @param queueCapacity tasks that may wait for a worker
+     * @throws UnsupportedOperationException if virtual threads are selected but this build
+     *         or runtime does not support them
+     */
+	static ExecutionStage create(StageType stageType, int threads, int queueCapacity, WaitStrategy waitStrategy) {
+		switch(stageType) {
+			case RING_BUFFER:
+				return new RingBufferStage(threads, queueCapacity, waitStrategy);
+			case FORK_JOIN:
+				return new ForkJoinStage(threads, queueCapacity);
+			case VIRTUAL_THREADS:
+				try {
+					return (ExecutionStage) Class.forName(VIRTUAL_THREAD_STAGE)
+							.getDeclaredConstructor(int.class, int.class)
+							.newInstance(threads, queueCapacity);
+				}catch(ClassNotFoundException | UnsupportedClassVersionError ex) {
+					throw new UnsupportedOperationException(
+							"virtual threads need a Java 21 runtime and a build with the jdk21 profile", ex);
+				}catch(ReflectiveOperationException ex) {
+					throw new IllegalStateException("cannot create the virtual thread stage", ex);
+				}
+			default:
+				return new ThreadPoolStage(threads, queueCapacity);
+		}
+	}
+	
+	/**
+     * Reserves capacity for one task without waiting.
+     *
+     * @return {@code true} if a reservation was taken
+     */
+	boolean tryReserve();
+	
+	/**
+     * Reserves capacity for one task, waiting up to the given time for it to free up.
+     *
+     * @return {@code true} if a reservation was taken
+     * @throws InterruptedException if interrupted while waiting
+     */
+	boolean tryReserve(long timeout, TimeUnit unit) throws InterruptedException;
+	
+	/**
+     * Reserves as much currently free capacity as possible, up to {@code max} tasks, without waiting.
+     *
+     * @return number of reservations taken
+     */
+	int tryReserveUpTo(int max);
+	
+	/**
+     * Gives back {@code count} reservations.
+     */
+	void release(int count);
+	
+	/**
+     * Hands a task to the workers. The caller must hold a reservation for it.
+     *
+     * @throws RejectedExecutionException if the stage is shut down
+     */
+	void execute(Runnable task);
+	
+	/**
+     * Changes how many tasks may run at once. The capacity changes by the same amount,
+     * so the number of tasks that may wait stays the same. When shrinking, running tasks
+     * finish normally and no new reservations are granted until enough are released.
+     *
+     * @param threads new number of concurrently running tasks
+     * @throws UnsupportedOperationException if this stage has a fixed set of workers
+     */
+	default void resize(int threads) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be resized");
+	}
+	
+	/**
+     * @return {@code true} if no task is running or waiting and no reservation is held
+     */
+	boolean isIdle();
+	
+	/**
+     * Stops accepting tasks; tasks already handed over still run.
+     */
+	void shutdown();
+	
+	/**
+     * Waits for the workers to finish after {@link #shutdown()}.
+     *
+     * @return {@code true} if they finished within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+	
+	/**
+     * Stops accepting tasks and interrupts the workers.
+     */
+	void shutdownNow();
+}
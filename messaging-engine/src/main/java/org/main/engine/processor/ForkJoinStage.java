@@ -0,0 +1,35 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * {@link ExecutionStage} on a {@link ForkJoinPool} in async (FIFO) mode, admitted through
+ * (worker threads + queue capacity) permits.
+ *
+ * <p>There is no single shared queue: submitting threads push into one of several
+ * submission queues picked by a per-thread probe, each worker has its own deque, and idle
+ * workers steal from the others. Many short tasks therefore do not all meet at one head
+ * and tail lock as they do in front of a {@code ThreadPoolExecutor}. Async mode keeps
+ * each deque in submission order, as event-style tasks that are never joined expect.
+ *
+ * <p>The pool's parallelism is fixed; {@link #resize(int)} only moves the permit budget,
+ * which is what bounds the number of running tasks.
+ */
+final class ForkJoinStage extends PermitStage {
+	
+	ForkJoinStage(int threads, int queueCapacity) {
+		super(new ForkJoinPool(threads, ForkJoinStage::newWorker, null, true), threads, threads + queueCapacity);
+	}
+	
+	private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+		ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		worker.setName("fj-worker-" + worker.getPoolIndex());
+		return worker;
+	}
+	
+	@Override
+	public boolean isIdle() {
+		return ((ForkJoinPool) executor).isQuiescent() & super.isIdle();
+	}
+}
@@ -0,0 +1,99 @@
+package org.main.engine.processor;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks on an {@link ExecutionStage} so that tasks with the same key run one at a
+ * time in dispatch order, while tasks with different keys run in parallel.
+ *
+ * <p>Each key with a task in progress has a lane. A task dispatched to a busy key waits in
+ * its lane without a worker; when the stage returned by the running task completes, the
+ * next one is handed to the stage. A worker therefore never waits for another task of
+ * its key, and async tasks keep their key busy until they complete, not until their
+ * worker returns. Waiting tasks keep the reservation their caller took for them, so the
+ * stage capacity still bounds everything in progress.
+ *
+ * <p>Tasks without a key are handed to the stage directly.
+ */
+final class KeyedDispatcher {
+	private final ExecutionStage stage;
+	
+	// A key is present while one of its tasks is in progress; the deque holds those waiting
+	private final ConcurrentHashMap<String, ArrayDeque<Supplier<CompletionStage<?>>>> lanes = new ConcurrentHashMap<>();
+	
+	KeyedDispatcher(ExecutionStage stage) {
+		this.stage = stage;
+	}
+	
+	/**
+     * Runs {@code task} once every task dispatched earlier with the same key has completed.
+     *
+     * @param key ordering key, or {@code null} for no ordering
+     * @param task starts the work and returns its completion; the caller must hold a reservation for it
+     * @throws RejectedExecutionException if the task would start right away and the stage is shut down
+     */
+	void dispatch(String key, Supplier<CompletionStage<?>> task) {
+		if(key == null) {
+			stage.execute(task::get);
+			return;
+		}
+		
+		boolean[] idle = new boolean[1];
+		lanes.compute(key, (k, lane) -> {
+			if(lane == null) {
+				idle[0] = true;
+				return new ArrayDeque<>();
+			}
+			lane.add(task);
+			return lane;
+		});
+		if(!idle[0]) return;
+		
+		try {
+			stage.execute(() -> runInLane(key, task));
+		}catch(RejectedExecutionException ex) {
+			startNext(key); // the caller takes care of this task; later ones must not be stuck behind it
+			throw ex;
+		}
+	}
+	
+	/**
+     * @return {@code true} if no keyed task is in progress or waiting
+     */
+	boolean isIdle() {
+		return lanes.isEmpty();
+	}
+	
+	private void runInLane(String key, Supplier<CompletionStage<?>> task) {
+		CompletionStage<?> done;
+		try {
+			done = task.get();
+		}catch(RuntimeException | Error ex) {
+			done = CompletableFuture.failedFuture(ex);
+		}
+		done.whenComplete((result, error) -> startNext(key));
+	}
+	
+	private void startNext(String key) {
+		AtomicReference<Supplier<CompletionStage<?>>> polled = new AtomicReference<>();
+		lanes.computeIfPresent(key, (k, lane) -> {
+			polled.set(lane.poll());
+			return polled.get() == null ? null : lane;
+		});
+		Supplier<CompletionStage<?>> next = polled.get();
+		if(next == null) return;
+		
+		try {
+			stage.execute(() -> runInLane(key, next));
+		}catch(RejectedExecutionException ex) {
+			// Stage shut down while the lane still had work: finish it on this thread, in order
+			runInLane(key, next);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.main.engine.processor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares the capacity of an {@link ExecutionStage} between {@link PriorityLane}s.
+ *
+ * <p>Every reservation counts against its lane's memory budget as well as the stage.
+ * Submitting threads reserve directly with {@link #tryReserve(int)}. Drainers, which
+ * compete for capacity as it is released, take turns in weighted round robin: the lane
+ * whose turn it is may take up to {@code weight * quantum} reservations before the turn
+ * passes to the next lane with a backlog and room in its budget. With backlogs in several
+ * lanes, freed capacity is therefore split in proportion to the weights, and a lane without
+ * a backlog does not hold up the others. While only one lane has a backlog there is nobody
+ * to share with, and its drainer takes as much as it asks for.
+ *
+ * <p>Turns follow the backlog rather than the drainers that happen to be waiting, so a
+ * lane keeps its turn while its drainer is busy handing over the previous batch.
+ */
+final class LaneScheduler {
+	private final ExecutionStage stage;
+	private final int[] weights;
+	private final int[] budgets;
+	private final AtomicIntegerArray held;
+	private final IntPredicate hasBacklog;
+	private final int quantum;
+	
+	private final Lock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	private volatile int waiting; // written with the lock held
+	private int turn; // guarded by lock
+	private int credit; // guarded by lock
+	
+	/**
+     * @param quantum reservations per unit of weight in one turn, usually the drainer's batch size
+     * @param hasBacklog tells whether a lane has tasks on disk waiting for capacity
+     */
+	LaneScheduler(ExecutionStage stage, List<PriorityLane> lanes, int quantum, IntPredicate hasBacklog) {
+		if(quantum <= 0) { throw new IllegalArgumentException("quantum must be more than 0"); }
+		this.stage = stage;
+		this.hasBacklog = hasBacklog;
+		this.quantum = quantum;
+		this.weights = new int[lanes.size()];
+		this.budgets = new int[lanes.size()];
+		for(int i=0; i<weights.length; i++) {
+			weights[i] = lanes.get(i).weight();
+			budgets[i] = lanes.get(i).memoryBudget() == 0 ? Integer.MAX_VALUE : lanes.get(i).memoryBudget();
+		}
+		this.held = new AtomicIntegerArray(weights.length);
+		this.credit = turnCredit(0);
+	}
+	
+	/**
+     * Reserves capacity for one task of {@code lane} without waiting.
+     *
+     * @return {@code true} if both the lane budget and the stage had room
+     */
+	boolean tryReserve(int lane) {
+		return reserveUpTo(lane, 1) == 1;
+	}
+	
+	/**
+     * Reserves capacity for up to {@code max} tasks of {@code lane}, waiting for the lane's
+     * turn and for capacity up to the given time.
+     *
+     * @return number of reservations taken; {@code 0} on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+	int reserve(int lane, int max, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			waiting++;
+			try {
+				while(true) {
+					if(currentTurn() == lane) {
+						// A lane that is the only one with a backlog shares with nobody: no turn limit
+						boolean shared = othersEligible(lane);
+						int taken = reserveUpTo(lane, shared ? Math.min(max, credit) : max);
+						if(taken > 0) {
+							if(shared) {
+								credit -= taken;
+								if(credit == 0) passTurn();
+							}
+							return taken;
+						}
+					}
+					if(nanos <= 0) return 0;
+					nanos = released.awaitNanos(nanos);
+				}
+			}finally {
+				waiting--;
+			}
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Gives back {@code count} reservations of {@code lane} and wakes waiting drainers.
+     */
+	void release(int lane, int count) {
+		held.addAndGet(lane, -count);
+		stage.release(count);
+		signal();
+	}
+	
+	/**
+     * Wakes waiting drainers to look at the capacity again, e.g. after the stage was resized.
+     */
+	void signal() {
+		if(waiting == 0) return; // drainers count themselves in before they check, so none can be missed
+		lock.lock();
+		try {
+			released.signalAll();
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	private int reserveUpTo(int lane, int max) {
+		int taken;
+		while(true) {
+			int current = held.get(lane);
+			taken = (int) Math.min(max, (long) budgets[lane] - current);
+			if(taken <= 0) return 0;
+			if(held.compareAndSet(lane, current, current + taken)) break;
+		}
+		
+		int granted = taken == 1 ? (stage.tryReserve() ? 1 : 0) : stage.tryReserveUpTo(taken);
+		if(granted < taken) {
+			held.addAndGet(lane, granted - taken);
+		}
+		return granted;
+	}
+	
+	/**
+     * Returns the lane whose turn it is, passing the turn on while the current lane has no
+     * backlog or no budget left. Must be called with the lock held.
+     */
+	private int currentTurn() {
+		for(int i=0; i<weights.length && !eligible(turn); i++) {
+			passTurn();
+		}
+		return turn;
+	}
+	
+	private boolean eligible(int lane) {
+		return held.get(lane) < budgets[lane] && hasBacklog.test(lane);
+	}
+	
+	private boolean othersEligible(int lane) {
+		for(int i=0; i<weights.length; i++) {
+			if(i != lane && eligible(i)) return true;
+		}
+		return false;
+	}
+	
+	private void passTurn() {
+		turn = (turn + 1) % weights.length;
+		credit = turnCredit(turn);
+	}
+	
+	private int turnCredit(int lane) {
+		return (int) Math.min(Integer.MAX_VALUE, (long) weights[lane] * quantum);
+	}
+}
@@ -0,0 +1,71 @@
+package org.main.engine.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.main.engine.dto.Message;
+
+/**
+ * Encodes engine messages into disk records and back.
+ *
+ * <p>Record layout:
+ * <pre>
+ * [1 byte flags][2 bytes id length][UTF-8 id]([2 bytes key length][UTF-8 key])[payload bytes]
+ * </pre>
+ * The key is only present if the keyed flag is set, so records written before keys
+ * existed decode unchanged. Spools of the first version held plain task texts instead
+ * of this layout; the processor re-encodes them when it opens such a spool.
+ *
+ * <p>Encoding copies the payload exactly once (into the record buffer). Decoding
+ * returns views into the record, so recovered payloads are not copied at all.
+ */
+final class MessageCodec {
+	private static final byte FLAG_TEXT = 1;
+	private static final byte FLAG_KEYED = 2;
+	private static final int HEADER_BYTES = 1 + Short.BYTES;
+	static final int MAX_STRING_BYTES = 0xFFFF;
+	
+	private MessageCodec() {}
+	
+	static ByteBuffer encode(Message message) {
+		byte[] id = message.id().getBytes(StandardCharsets.UTF_8);
+		byte[] key = message.key() == null ? null : message.key().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer payload = message.payload();
+		
+		if(id.length > MAX_STRING_BYTES) { throw new IllegalArgumentException("id must be at most 65535 UTF-8 bytes"); }
+		if(key != null && key.length > MAX_STRING_BYTES) { throw new IllegalArgumentException("key must be at most 65535 UTF-8 bytes"); }
+		
+		int keyBytes = key == null ? 0 : Short.BYTES + key.length;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + id.length + keyBytes + payload.remaining());
+		record.put((byte) ((message.text() ? FLAG_TEXT : 0) | (key != null ? FLAG_KEYED : 0)));
+		record.putShort((short) id.length);
+		record.put(id);
+		if(key != null) {
+			record.putShort((short) key.length);
+			record.put(key);
+		}
+		record.put(payload);
+		record.flip();
+		return record;
+	}
+	
+	static Message decode(ByteBuffer record) {
+		ByteBuffer buf = record.duplicate();
+		byte flags = buf.get();
+		int idLen = Short.toUnsignedInt(buf.getShort());
+		
+		String id = readString(buf, idLen);
+		
+		String key = null;
+		if((flags & FLAG_KEYED) != 0) {
+			key = readString(buf, Short.toUnsignedInt(buf.getShort()));
+		}
+		return new Message(id, buf.slice(), (flags & FLAG_TEXT) != 0, key);
+	}
+	
+	private static String readString(ByteBuffer buf, int length) {
+		String value = StandardCharsets.UTF_8.decode(buf.slice().limit(length)).toString();
+		buf.position(buf.position() + length);
+		return value;
+	}
+}
@@ -0,0 +1,49 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.main.engine.dto.Message;
+
+/**
+ * The work {@link WorkerThreadPoolProcessor} does for each message.
+ *
+ * <p>{@link #handle(Message)} is called on a worker of the execution stage. A handler may
+ * finish its work before returning (and return a completed stage), or start asynchronous
+ * work and return right away. The message keeps its capacity reservation, and a message
+ * recovered from disk stays unacknowledged, until the returned stage completes, so async
+ * handlers free their worker without letting more messages in than the budget allows.
+ *
+ * <p>A stage that completes exceptionally, or an exception thrown by {@code handle},
+ * marks the message as failed. It is published as
+ * {@link org.main.engine.events.EngineEventType#TASK_FAILED_TO_EXECUTE} and not retried.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+	
+	/**
+     * Processes one message.
+     *
+     * @param message the message; its payload must not be used after the returned stage completes
+     * @return stage that completes once the message is processed; never {@code null}
+     * @throws Exception if processing fails right away
+     */
+	CompletionStage<?> handle(Message message) throws Exception;
+	
+	/**
+     * The engine's built-in simulated work: blocks the worker for {@code delayMs}.
+     *
+     * @param delayMs processing time per message in milliseconds
+     */
+	static MessageHandler sleeping(long delayMs) {
+		if(delayMs < 0) { throw new IllegalArgumentException("delayMs must be >= 0"); }
+		return message -> {
+			try {
+				Thread.sleep(delayMs);
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return CompletableFuture.completedFuture(null);
+		};
+	}
+}
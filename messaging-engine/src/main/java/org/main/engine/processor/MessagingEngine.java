@@ -1,6 +1,7 @@
 package org.main.engine.processor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.main.engine.listener.EngineEventPublisher;
 
@@ -13,8 +14,46 @@ public class MessagingEngine {
 		this.threadProcessor = new WorkerThreadPoolProcessor(threadCount, queueCapactiy, processingDelayMs, eventPublisher);
 	}
 	
-	public void submitTask(String message) throws IOException, InterruptedException {
-		this.threadProcessor.submitTask(message);
+	public MessagingEngine(int threadCount, int queueCapactiy, long processingDelayMs, EngineOptions options) throws IOException {
+		this.eventPublisher = new EngineEventPublisher();
+		this.threadProcessor = new WorkerThreadPoolProcessor(threadCount, queueCapactiy, processingDelayMs, eventPublisher, options);
+	}
+	
+	public MessagingEngine(int threadCount, int queueCapactiy, MessageHandler handler, EngineOptions options) throws IOException {
+		this.eventPublisher = new EngineEventPublisher();
+		this.threadProcessor = new WorkerThreadPoolProcessor(threadCount, queueCapactiy, handler, eventPublisher, options);
+	}
+	
+	public AdmissionResult submitTask(String message) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(message);
+	}
+	
+	public AdmissionResult submitTask(ByteBuffer payload) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(payload);
+	}
+	
+	public AdmissionResult submitTask(byte[] payload) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(ByteBuffer.wrap(payload));
+	}
+	
+	public AdmissionResult submitTask(String key, String message) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(key, message);
+	}
+	
+	public AdmissionResult submitTask(PriorityLane lane, String message) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(lane, message);
+	}
+	
+	public AdmissionResult submitTask(PriorityLane lane, String key, byte[] payload) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(lane, key, ByteBuffer.wrap(payload));
+	}
+	
+	public AdmissionResult submitTask(String key, ByteBuffer payload) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(key, payload);
+	}
+	
+	public AdmissionResult submitTask(String key, byte[] payload) throws IOException, InterruptedException {
+		return this.threadProcessor.submitTask(key, ByteBuffer.wrap(payload));
 	}
 	
 	public EngineEventPublisher events() {
@@ -24,4 +63,11 @@ public class MessagingEngine {
 	public void shutDownGracefully() throws InterruptedException, IOException {
 		this.threadProcessor.shutdownGracefully();
 	}
+	
+	/**
+     * Deletes the spool files of every priority lane; the engine must be shut down.
+     */
+	public static void deleteSpoolFiles() throws IOException {
+		WorkerThreadPoolProcessor.deleteSpoolFiles();
+	}
 }
@@ -0,0 +1,133 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExecutionStage} that admits tasks through a fair {@link Semaphore} of
+ * {@code capacity} permits and runs them on an {@link ExecutorService}.
+ * Waiting reservations are served in order.
+ *
+ * <p>{@link #resize(int)} moves the permit count with the thread count; subclasses with
+ * a worker pool adjust it in {@link #resizeWorkers(int)}.
+ */
+abstract class PermitStage implements ExecutionStage {
+	protected final ExecutorService executor;
+	protected final ResizableSemaphore permits;
+	protected volatile int capacity;
+	private int threads; // guarded by this
+	
+	protected PermitStage(ExecutorService executor, int threads, int capacity) {
+		this.executor = executor;
+		this.threads = threads;
+		this.capacity = capacity;
+		this.permits = new ResizableSemaphore(capacity);
+	}
+	
+	@Override
+	public boolean tryReserve() {
+		return permits.tryAcquire();
+	}
+	
+	@Override
+	public boolean tryReserve(long timeout, TimeUnit unit) throws InterruptedException {
+		return permits.tryAcquire(timeout, unit);
+	}
+	
+	/**
+     * Takes what is available, up to {@code max}, without ever zeroing the semaphore in
+     * between, so concurrent {@link #tryReserve()} calls still see the free permits.
+     * The zero-timeout acquire honors fairness: with reservations already waiting, this
+     * returns {@code 0} instead of overtaking them.
+     */
+	@Override
+	public int tryReserveUpTo(int max) {
+		while(true) {
+			int available = permits.availablePermits();
+			if(available <= 0) return 0; // also while a shrink is being paid back
+			int wanted = Math.min(available, max);
+			try {
+				if(permits.tryAcquire(wanted, 0L, TimeUnit.NANOSECONDS)) return wanted;
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return 0;
+			}
+			if(permits.hasQueuedThreads()) return 0;
+			// otherwise another thread took permits in between; retry with the new count
+		}
+	}
+	
+	@Override
+	public void release(int count) {
+		permits.release(count);
+	}
+	
+	@Override
+	public synchronized void resize(int threads) {
+		if(threads <= 0) { throw new IllegalArgumentException("threads must be more than 0"); }
+		int delta = threads - this.threads;
+		if(delta == 0) return;
+		
+		// Grow workers before handing out permits, and take permits back before shrinking workers
+		if(delta > 0) {
+			resizeWorkers(threads);
+			capacity += delta;
+			permits.release(delta);
+		}else {
+			permits.reduce(-delta);
+			capacity += delta;
+			resizeWorkers(threads);
+		}
+		this.threads = threads;
+	}
+	
+	/**
+     * Adjusts the worker pool to {@code threads}; stages without a fixed pool do nothing.
+     */
+	protected void resizeWorkers(int threads) {
+	}
+	
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+	
+	/**
+     * Idle once every permit is back; tasks release theirs as their last step.
+     */
+	@Override
+	public boolean isIdle() {
+		return permits.availablePermits() == capacity;
+	}
+	
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+	
+	@Override
+	public void shutdownNow() {
+		executor.shutdownNow();
+	}
+	
+	/**
+     * Fair semaphore whose permits can be taken away, even below zero.
+     */
+	protected static final class ResizableSemaphore extends Semaphore {
+		private static final long serialVersionUID = 1L;
+		
+		ResizableSemaphore(int permits) {
+			super(permits, true);
+		}
+		
+		void reduce(int count) {
+			reducePermits(count);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.main.engine.processor;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A class of tasks with its own disk spool, in-memory budget and share of the stage capacity.
+ *
+ * <p>Lanes are configured with {@link EngineOptions#withPriorityLanes(java.util.List)}; the
+ * first lane is the default for tasks submitted without one. A task only waits behind the
+ * backlog of its own lane, so an urgent lane is not stuck behind a bulk lane's spool.
+ *
+ * <p>Use {@link #of(String, int)} and the {@code with*} methods:
+ * <pre>
+ * PriorityLane.of("urgent", 8).withMemoryBudget(16)
+ * </pre>
+ *
+ * @param name lane name, used in spool file names and events; letters, digits, {@code -} and {@code _}
+ * @param weight share of freed capacity this lane's drainers get while several lanes have a backlog
+ * @param memoryBudget most tasks of this lane in memory at once; {@code 0} for no limit beyond the stage capacity
+ */
+public record PriorityLane(String name, int weight, int memoryBudget) {
+	// Declared before DEFAULT, which is validated against it
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+	
+	public static final PriorityLane DEFAULT = new PriorityLane("default", 1, 0);
+
+	public PriorityLane {
+		Objects.requireNonNull(name, "name");
+		if(!NAME.matcher(name).matches()) { throw new IllegalArgumentException("lane name must only contain letters, digits, '-' and '_'"); }
+		if(weight <= 0) { throw new IllegalArgumentException("weight must be more than 0"); }
+		if(memoryBudget < 0) { throw new IllegalArgumentException("memoryBudget must be >= 0"); }
+	}
+
+	public static PriorityLane of(String name, int weight) {
+		return new PriorityLane(name, weight, 0);
+	}
+
+	public PriorityLane withWeight(int weight) {
+		return new PriorityLane(name, weight, memoryBudget);
+	}
+
+	public PriorityLane withMemoryBudget(int memoryBudget) {
+		return new PriorityLane(name, weight, memoryBudget);
+	}
+}
@@ -0,0 +1,266 @@
+package org.main.engine.processor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link ExecutionStage} on a preallocated multi-producer/multi-consumer ring buffer.
+ *
+ * <p>Capacity is accounted with two sequences: {@code admitted} counts reservations ever
+ * taken and {@code finished} counts reservations given back. A reservation is a CAS on
+ * {@code admitted} that keeps {@code admitted - finished} within (worker threads + queue
+ * capacity). The ring has at least that many slots, so a task handed over with a
+ * reservation always finds its slot free and {@link #execute(Runnable)} never blocks.
+ *
+ * <p>Slots are handed from producers to workers with per-slot sequence numbers: slot
+ * {@code s & mask} holds claim {@code s} once its sequence is {@code s + 1} and is free
+ * for claim {@code s + size} again once a worker has set it to {@code s + size}. Hot
+ * sequences sit on their own cache lines, so producers and workers do not falsely share.
+ *
+ * <p>{@link #shutdown()} is meant to be called once no more tasks are submitted, as the
+ * processor does after stopping its drainers.
+ */
+final class RingBufferStage implements ExecutionStage {
+	// Longs per 64-byte cache line; slot sequences are spread this far apart
+	private static final int PAD = 8;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long RESERVE_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final int capacity;
+	private final int mask;
+	private final Runnable[] tasks;
+	private final AtomicLongArray slotSequences;
+
+	private final PaddedSequence admitted = new PaddedSequence(0);
+	private final PaddedSequence finished = new PaddedSequence(0);
+	private final PaddedSequence tail = new PaddedSequence(0);
+	private final PaddedSequence head = new PaddedSequence(0);
+
+	private final WaitStrategy waitStrategy;
+	private final Thread[] workers;
+	private final AtomicIntegerArray parked;
+	private final AtomicInteger sleepers = new AtomicInteger();
+
+	private volatile boolean shutdown;
+	private volatile boolean stopNow;
+
+	RingBufferStage(int threads, int queueCapacity, WaitStrategy waitStrategy) {
+		this.capacity = threads + queueCapacity;
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) size <<= 1;
+
+		this.mask = size - 1;
+		this.tasks = new Runnable[size];
+		this.slotSequences = new AtomicLongArray(size * PAD);
+		for(int i=0; i<size; i++) {
+			slotSequences.set(i * PAD, i);
+		}
+
+		this.waitStrategy = waitStrategy;
+		this.workers = new Thread[threads];
+		this.parked = new AtomicIntegerArray(threads);
+		for(int w=0; w<threads; w++) {
+			int worker = w;
+			workers[w] = new Thread(() -> workLoop(worker), "ring-worker-" + w);
+			workers[w].start();
+		}
+	}
+
+	@Override
+	public boolean tryReserve() {
+		return tryReserveUpTo(1) == 1;
+	}
+
+	@Override
+	public boolean tryReserve(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(!tryReserve()) {
+			if(Thread.interrupted()) throw new InterruptedException();
+			if(System.nanoTime() - deadline >= 0) return false;
+			LockSupport.parkNanos(RESERVE_BACKOFF_NANOS);
+		}
+		return true;
+	}
+
+	@Override
+	public int tryReserveUpTo(int max) {
+		while(true) {
+			long taken = admitted.get();
+			// finished only grows, so a stale read can only under-estimate the free capacity
+			long free = capacity - (taken - finished.get());
+			if(free <= 0) return 0;
+
+			int count = (int) Math.min(free, max);
+			if(admitted.compareAndSet(taken, taken + count)) return count;
+		}
+	}
+
+	@Override
+	public void release(int count) {
+		finished.getAndAdd(count);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if(shutdown) { throw new RejectedExecutionException("ring buffer stage is shut down"); }
+
+		long claim = tail.getAndIncrement();
+		int idx = (int) (claim & mask) * PAD;
+		while(slotSequences.get(idx) != claim) {
+			Thread.onSpinWait(); // a worker is still clearing the slot from the previous lap
+		}
+		tasks[(int) (claim & mask)] = task;
+		slotSequences.set(idx, claim + 1);
+
+		if(sleepers.get() > 0) {
+			wakeOne();
+		}
+	}
+
+	@Override
+	public boolean isIdle() {
+		return admitted.get() == finished.get();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		for(Thread worker: workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for(Thread worker: workers) {
+			long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if(left <= 0) return !worker.isAlive();
+			worker.join(left);
+			if(worker.isAlive()) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void shutdownNow() {
+		shutdown = true;
+		stopNow = true;
+		for(Thread worker: workers) {
+			worker.interrupt();
+		}
+	}
+
+	private void workLoop(int worker) {
+		int idle = 0;
+		while(!stopNow) {
+			long claim = head.get();
+			int idx = (int) (claim & mask) * PAD;
+			long seq = slotSequences.get(idx);
+
+			if(seq == claim + 1) {
+				if(!head.compareAndSet(claim, claim + 1)) continue; // another worker took it
+
+				Runnable task = tasks[(int) (claim & mask)];
+				tasks[(int) (claim & mask)] = null;
+				slotSequences.set(idx, claim + tasks.length);
+				idle = 0;
+				run(task);
+			}else if(seq <= claim) {
+				if(shutdown && claim == tail.get()) return;
+				idle(worker, idle++, idx, claim);
+			}
+			// seq > claim + 1: head moved on since it was read, retry
+		}
+	}
+
+	private void idle(int worker, int idle, int idx, long claim) {
+		if(waitStrategy == WaitStrategy.SPIN || idle < SPIN_TRIES) {
+			Thread.onSpinWait();
+			return;
+		}
+		if(waitStrategy == WaitStrategy.YIELD || idle < SPIN_TRIES + YIELD_TRIES) {
+			Thread.yield();
+			return;
+		}
+
+		// Announce before the final check; producers check sleepers after publishing
+		parked.set(worker, 1);
+		sleepers.incrementAndGet();
+		if(slotSequences.get(idx) != claim + 1 && !shutdown) {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		sleepers.decrementAndGet();
+		parked.set(worker, 0);
+		Thread.interrupted(); // a stray interrupt must not turn parking into spinning
+	}
+
+	private void wakeOne() {
+		for(int w=0; w<workers.length; w++) {
+			if(parked.get(w) == 1 && parked.compareAndSet(w, 1, 0)) {
+				LockSupport.unpark(workers[w]);
+				return;
+			}
+		}
+	}
+
+	private static void run(Runnable task) {
+		try {
+			task.run();
+		}catch(Throwable ex) {
+			ex.printStackTrace(); // keep the worker alive, like a pool replacing a dead thread
+		}
+	}
+
+	/**
+     * A volatile long alone on its cache line.
+     */
+	static class LeftPadding {
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	static class SequenceValue extends LeftPadding {
+		volatile long value;
+	}
+
+	static final class PaddedSequence extends SequenceValue {
+		private static final VarHandle VALUE;
+		static {
+			try {
+				VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+			}catch(ReflectiveOperationException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		long p11, p12, p13, p14, p15, p16, p17;
+
+		PaddedSequence(long initial) {
+			this.value = initial;
+		}
+
+		long get() {
+			return value;
+		}
+
+		boolean compareAndSet(long expected, long next) {
+			return VALUE.compareAndSet(this, expected, next);
+		}
+
+		long getAndIncrement() {
+			return (long) VALUE.getAndAdd(this, 1L);
+		}
+
+		long getAndAdd(long delta) {
+			return (long) VALUE.getAndAdd(this, delta);
+		}
+	}
+}
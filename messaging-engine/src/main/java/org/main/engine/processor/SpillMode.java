@@ -0,0 +1,20 @@
+package org.main.engine.processor;
+
+/**
+ * How {@link WorkerThreadPoolProcessor} writes tasks that overflow to disk.
+ */
+public enum SpillMode {
+	/**
+	 * The submitting thread writes the task itself, batched with concurrent spills
+	 * by a {@code GroupCommitWriter}. Submission returns once the task is written,
+	 * so it also waits for any flush the queue's policy triggers.
+	 */
+	GROUP_COMMIT,
+	
+	/**
+	 * The task is staged in a bounded in-memory ring and written by a dedicated
+	 * {@code AsyncSpillWriter} thread per disk partition. Submission only waits
+	 * while the ring is full, so fsync latency does not reach the producers.
+	 */
+	ASYNC
+}
@@ -0,0 +1,33 @@
+package org.main.engine.processor;
+
+/**
+ * Which {@link ExecutionStage} a {@link WorkerThreadPoolProcessor} runs its tasks on.
+ */
+public enum StageType {
+	/**
+	 * A fixed {@code ThreadPoolExecutor} with a {@code LinkedBlockingQueue}, admitted
+	 * through a fair {@code Semaphore}. Two contended locks and one queue node per task.
+	 */
+	THREAD_POOL,
+	
+	/**
+	 * A preallocated MPMC ring buffer with cache-line-padded sequences and dedicated
+	 * workers. Admission and hand-off are lock-free and allocation-free; idle workers
+	 * follow {@link EngineOptions#waitStrategy()}. Admission is not fair.
+	 */
+	RING_BUFFER,
+	
+	/**
+	 * A {@code ForkJoinPool} in async mode behind the same fair {@code Semaphore}. Tasks are
+	 * spread over per-worker deques and stolen by idle workers instead of sharing one queue,
+	 * which scales better for many short tasks. Meant for non-blocking handlers.
+	 */
+	FORK_JOIN,
+	
+	/**
+	 * A virtual thread per task, for handlers that block. All (threads + queue capacity)
+	 * admitted tasks run concurrently; nothing waits for a worker. Needs a Java 21 runtime
+	 * and a build with the {@code jdk21} Maven profile.
+	 */
+	VIRTUAL_THREADS
+}
@@ -0,0 +1,49 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExecutionStage} on a {@link ThreadPoolExecutor} with a bounded
+ * {@link LinkedBlockingQueue}, admitted through (worker threads + queue capacity) permits.
+ * The pool has a fixed size unless it is {@link #resize(int) resized}.
+ */
+final class ThreadPoolStage extends PermitStage {
+	private final LinkedBlockingQueue<Runnable> queue;
+	
+	ThreadPoolStage(int threads, int queueCapacity) {
+		this(threads, new LinkedBlockingQueue<>(queueCapacity));
+	}
+	
+	private ThreadPoolStage(int threads, LinkedBlockingQueue<Runnable> queue) {
+		super(new ThreadPoolExecutor(threads, 
+									threads, 
+									0L, TimeUnit.MILLISECONDS, 
+									queue), 
+				threads, 
+				threads + queue.remainingCapacity());
+		this.queue = queue;
+	}
+	
+	@Override
+	protected void resizeWorkers(int threads) {
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+		// Core size may never exceed the maximum, so the order depends on the direction
+		if(threads > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(threads);
+			pool.setCorePoolSize(threads);
+		}else {
+			pool.setCorePoolSize(threads);
+			pool.setMaximumPoolSize(threads);
+		}
+	}
+	
+	@Override
+	public boolean isIdle() {
+		boolean queueEmpty = queue.isEmpty();
+		boolean noActiveThreads = ((ThreadPoolExecutor) executor).getActiveCount() == 0;
+		
+		return queueEmpty & noActiveThreads & super.isIdle();
+	}
+}
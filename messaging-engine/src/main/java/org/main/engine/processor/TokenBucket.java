@@ -0,0 +1,75 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket, kept as a single "theoretical arrival time" (GCRA).
+ *
+ * <p>Each token moves the arrival time one interval ({@code 1 / rate}) further. A token
+ * is available while the arrival time is at most {@code burst - 1} intervals ahead of now,
+ * which is the same as a bucket of {@code burst} tokens refilled at {@code rate}. One CAS
+ * per acquisition, no refill thread.
+ */
+final class TokenBucket {
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final LongSupplier nanoClock;
+	private final AtomicLong arrival;
+	
+	TokenBucket(double ratePerSecond, int burst) {
+		this(ratePerSecond, burst, System::nanoTime);
+	}
+	
+	TokenBucket(double ratePerSecond, int burst, LongSupplier nanoClock) {
+		if(ratePerSecond <= 0 || burst <= 0) { throw new IllegalArgumentException("ratePerSecond and burst must be more than 0"); }
+		this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+		this.toleranceNanos = intervalNanos * (burst - 1);
+		this.nanoClock = nanoClock;
+		this.arrival = new AtomicLong(nanoClock.getAsLong());
+	}
+	
+	/**
+     * Takes a token if one is available.
+     *
+     * @return {@code true} if a token was taken
+     */
+	boolean tryAcquire() {
+		return tryAcquire(1) == 1;
+	}
+	
+	/**
+     * Takes as many of the wanted tokens as are available.
+     *
+     * @param wanted maximum number of tokens to take
+     * @return number of tokens taken, between {@code 0} and {@code wanted}
+     */
+	int tryAcquire(int wanted) {
+		while(true) {
+			long now = nanoClock.getAsLong();
+			long current = arrival.get();
+			long start = Math.max(current, now);
+			if(start - now > toleranceNanos) return 0;
+			int taken = (int) Math.min(wanted, (toleranceNanos - (start - now)) / intervalNanos + 1);
+			if(arrival.compareAndSet(current, start + taken * intervalNanos)) return taken;
+		}
+	}
+	
+	/**
+     * Gives back tokens that were taken but not used. The bucket still never holds more
+     * than its burst, since an arrival time in the past counts as now.
+     *
+     * @param tokens number of tokens to give back
+     */
+	void refund(int tokens) {
+		arrival.addAndGet(-tokens * intervalNanos);
+	}
+	
+	/**
+     * @return nanoseconds until the next token is available; {@code 0} if one is available now
+     */
+	long nanosUntilAvailable() {
+		return Math.max(0L, arrival.get() - nanoClock.getAsLong() - toleranceNanos);
+	}
+}
@@ -0,0 +1,25 @@
+package org.main.engine.processor;
+
+/**
+ * What an idle {@link StageType#RING_BUFFER} worker does while the ring is empty.
+ * Each step trades CPU for wake-up latency.
+ */
+public enum WaitStrategy {
+	/**
+	 * Busy-spins with {@link Thread#onSpinWait()}. Lowest latency; every idle worker
+	 * keeps a core busy, so use it only with dedicated cores.
+	 */
+	SPIN,
+	
+	/**
+	 * Spins briefly, then calls {@link Thread#yield()}. Leaves the core to other
+	 * runnable threads but still shows up as CPU usage.
+	 */
+	YIELD,
+	
+	/**
+	 * Spins and yields briefly, then parks until a producer wakes the worker.
+	 * Idle workers cost nothing, at the price of an unpark on the producer side.
+	 */
+	PARK
+}
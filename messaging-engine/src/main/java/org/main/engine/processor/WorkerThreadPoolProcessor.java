@@ -1,59 +1,142 @@
 package org.main.engine.processor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.main.engine.dto.DiskRecord;
+import org.main.engine.dto.Message;
 import org.main.engine.events.EngineEvent;
 import org.main.engine.events.EngineEventType;
 import org.main.engine.listener.EngineEventPublisher;
+import org.main.engine.service.AckTracker;
+import org.main.engine.service.AsyncSpillWriter;
 import org.main.engine.service.DiskQueue;
+import org.main.engine.service.DiskQueueOptions;
 import org.main.engine.service.FileDiskQueue;
+import org.main.engine.service.GroupCommitWriter;
+import org.main.engine.service.LegacyQueueFile;
+import org.main.engine.service.OverflowHandler;
+import org.main.engine.service.PartitionedDiskQueue;
+import org.main.engine.service.SegmentEviction;
+import org.main.engine.service.SpillWriter;
 
 /**
-* A small worker pool that executes tasks using a fixed {@link ThreadPoolExecutor}
+* A small worker pool that executes tasks on a fixed set of worker threads
 * and spills overflow tasks to a disk-backed queue.
 *
 * <p>Behavior:
 * <ul>
-*   <li>If the disk queue is not empty, new tasks are appended to disk (disk priority).</li>
+*   <li>If the task's disk partition is not empty, the task is appended to it (disk priority).</li>
 *   <li>If in-memory capacity is full, tasks are appended to disk.</li>
-*   <li>A dedicated "drainer" thread moves tasks from disk to the executor whenever capacity exists.</li>
+*   <li>A dedicated "drainer" thread per disk partition moves tasks from disk to the executor whenever capacity exists.</li>
 * </ul>
 *
-* <p>Capacity control is done via a {@link Semaphore} representing:
-* (worker threads + in-memory queue capacity).
+* <p>Tasks are routed to a {@link PartitionedDiskQueue} partition by key (the message id when
+* no key is given), so tasks with the same key are spilled and recovered in FIFO order while
+* different partitions spill and drain in parallel. Tasks submitted with a key also run one
+* at a time in submission order through a {@link KeyedDispatcher}, whether they come from
+* memory or disk; tasks of other keys keep every worker busy in the meantime.
+*
+* <p>Capacity control is done by the {@link ExecutionStage}, representing:
+* (worker threads + in-memory queue capacity). {@link StageType#THREAD_POOL} uses a fair
+* {@code Semaphore} in front of a {@code ThreadPoolExecutor}; {@link StageType#RING_BUFFER}
+* reserves capacity and hands tasks over through a lock-free ring buffer;
+* {@link StageType#FORK_JOIN} spreads them over the work-stealing deques of a {@code ForkJoinPool};
+* {@link StageType#VIRTUAL_THREADS} runs every admitted task on its own virtual thread.
+*
+* <p>The drainer takes all free capacity at once (up to a fixed chunk size and its backlog)
+* and reads that many records with a single {@link DiskQueue#pollBatch(int, long)} call,
+* so a large backlog drains with one queue lock and usually one read per chunk.
+*
+* <p>With {@link SpillMode#ASYNC} spilled tasks are handed to a dedicated writer thread
+* per partition instead of being written by the submitting thread, so a slow disk
+* no longer stalls {@code submitTask}.
+*
+* <p>If the disk queue has a retention policy, tasks in evicted segments are never
+* recovered; each eviction is published as {@link EngineEventType#SEGMENT_EVICTED_BY_RETENTION}.
+*
+* <p>With several {@link PriorityLane}s each lane has its own spool (and so its own disk
+* priority rule) and memory budget, and a {@link LaneScheduler} shares freed capacity
+* between the lanes' drainers by weight.
+*
+* <p>With an enabled {@link ConcurrencyLimitPolicy} the number of concurrently running tasks
+* (and with it the capacity) adapts to the observed task latency; every change is published
+* as {@link EngineEventType#CONCURRENCY_LIMIT_CHANGED}.
+*
+* <p>Recovered tasks finish in any order; an {@link AckTracker} per partition only commits
+* the disk queue past a record once every record before it has finished. A task whose handler
+* fails has finished as well: like a task run from memory it is published as
+* {@link EngineEventType#TASK_FAILED_TO_EXECUTE} and not retried, nor replayed after a restart.
+*
+* <p>Every admitted task, in memory or spooled, counts as in flight until it completes or is
+* dropped. {@link EngineEventType#RUN_IDLE} is published by the completion that brings the
+* count to zero, so detecting idleness needs neither a watcher thread nor a lock on submit.
 */
 public class WorkerThreadPoolProcessor {
-	private final ThreadPoolExecutor executor;
-	private final BlockingQueue<Runnable> queue;
+	private static final int DRAIN_BATCH_RECORDS = 256;
+	private static final long DRAIN_BATCH_BYTES = 4L * 1024 * 1024;
+	private static final long BLOCK_RECHECK_MS = 50;
+	private static final String DEFAULT_SPOOL = "tasks.queue";
+	// tasks-<lane>.queue plus any partition, segment or side-file suffix
+	private static final Pattern LANE_SPOOL = Pattern.compile("(tasks-[A-Za-z0-9_-]+\\.queue)(?:\\..*)?");
+	// At most 3 UTF-8 bytes per char, so ids stay far below the codec's 65535-byte limit
+	private static final int MAX_ID_CHARS = 1024;
+	
+	private final ExecutionStage stage;
+	private final KeyedDispatcher dispatcher;
+	private final MessageHandler handler;
+	private final AdaptiveLimiter limiter;
+	private final AdmissionPolicy admission;
+	private final TokenBucket rateLimiter;
+	
+	private final LaneScheduler scheduler;
+	private final List<PriorityLane> lanes;
+	private final Map<String, Integer> laneIndexes = new HashMap<>();
 	
-	private DiskQueue fileQueue;
+	// One partitioned spool per lane; spool index s is partition (s % partitionsPerLane) of lane (s / partitionsPerLane)
+	private final PartitionedDiskQueue[] laneQueues;
+	private final int partitionsPerLane;
+	private final SpillWriter[] spillWriters;
+	private final boolean asyncSpill;
+	private final AckTracker[] ackTrackers;
+	// Polling and tracking happen under one lock, so tickets stay in poll order with several pollers
+	private final Object[] pollLocks;
+	// Drained batches not yet handed to the dispatcher; they keep disk priority like spooled tasks
+	private final AtomicIntegerArray dispatching;
 	private EngineEventPublisher eventPublisher;
 	
-	private final Semaphore permits;
-	private volatile long processingDelayMs;
-	private final int threadCount;
-	private final int queueCapactiy;
 	
 	private final AtomicBoolean running = new AtomicBoolean(true);
-	private final AtomicBoolean idleWatchRunning = new AtomicBoolean(true);
-	private final AtomicBoolean idleEmitted = new AtomicBoolean(false);
-	private final AtomicBoolean hasSeenWork = new AtomicBoolean(false);
+	// Admitted tasks not yet completed or dropped, including spooled ones
+	private final AtomicLong inFlight = new AtomicLong(0);
+	private final AtomicLong binarySequence = new AtomicLong(0);
 	
-	private final Thread drainerThread;
-	private final Thread idleWatchThread;
+	private final Thread[] drainerThreads;
 	
 	private final Lock lock = new ReentrantLock();
 	private final Condition wakeUp = lock.newCondition();
@@ -69,30 +152,247 @@ public class WorkerThreadPoolProcessor {
 									int queueCapacity, 
 									long processingDelayMs,
 									EngineEventPublisher eventPublisher) throws IOException{
-		if(processingDelayMs < 0) { throw new IllegalArgumentException("processingDelayMs must be more than 0"); }
-		this.fileQueue = new FileDiskQueue("tasks.queue");
-		this.queue = new LinkedBlockingQueue<>(queueCapacity);
+		this(threads, queueCapacity, processingDelayMs, eventPublisher, EngineOptions.defaults());
+	}
+	
+	/**
+     * Creates a worker pool whose disk queue uses the given options.
+     *
+     * @param threads number of worker threads in the executor
+     * @param queueCapacity max number of tasks that can wait in memory
+     * @param diskOptions flush and storage options of the disk queue
+     * @throws IOException if the disk queue cannot be created or opened
+     */
+	public WorkerThreadPoolProcessor(int threads, 
+									int queueCapacity, 
+									long processingDelayMs,
+									EngineEventPublisher eventPublisher,
+									DiskQueueOptions diskOptions) throws IOException{
+		this(threads, queueCapacity, processingDelayMs, eventPublisher, EngineOptions.defaults().withDiskOptions(diskOptions));
+	}
+	
+	/**
+     * Creates a worker pool with the given engine options.
+     *
+     * @param threads number of worker threads in the executor
+     * @param queueCapacity max number of tasks that can wait in memory
+     * @param options disk queue and partitioning options
+     * @throws IOException if the disk queue cannot be created or opened
+     */
+	public WorkerThreadPoolProcessor(int threads, 
+									int queueCapacity, 
+									long processingDelayMs,
+									EngineEventPublisher eventPublisher,
+									EngineOptions options) throws IOException{
+		this(threads, queueCapacity, sleepingHandler(processingDelayMs), eventPublisher, options);
+	}
+	
+	/**
+     * Creates a worker pool that runs the given handler for every task.
+     *
+     * <p>A task holds its capacity (and a recovered task its disk position) until the
+     * stage returned by the handler completes, not until the worker returns.
+     *
+     * @param threads number of worker threads in the executor
+     * @param queueCapacity max number of tasks that can wait in memory
+     * @param handler the work done per task
+     * @param options disk queue and partitioning options
+     * @throws IOException if the disk queue cannot be created or opened
+     */
+	public WorkerThreadPoolProcessor(int threads, 
+									int queueCapacity, 
+									MessageHandler handler,
+									EngineEventPublisher eventPublisher,
+									EngineOptions options) throws IOException{
+		this.handler = Objects.requireNonNull(handler, "handler");
 		this.eventPublisher = eventPublisher;
+		DiskQueueOptions diskOptions = withEvictionEvents(options.diskOptions());
+		this.lanes = options.priorityLanes();
+		this.partitionsPerLane = options.diskPartitions();
+		Optional<LegacyQueueFile> legacySpool = LegacyQueueFile.setAside(DEFAULT_SPOOL);
+		this.laneQueues = new PartitionedDiskQueue[lanes.size()];
+		for(int l=0; l<laneQueues.length; l++) {
+			laneIndexes.put(lanes.get(l).name(), l);
+			laneQueues[l] = new PartitionedDiskQueue(spoolFileName(l), partitionsPerLane, diskOptions);
+		}
 		
-		this.executor = new ThreadPoolExecutor(threads, 
-											threads, 
-											0L, TimeUnit.MILLISECONDS, 
-											queue);
+		this.spillWriters = new SpillWriter[lanes.size() * partitionsPerLane];
+		this.asyncSpill = options.spillMode() == SpillMode.ASYNC;
+		this.ackTrackers = new AckTracker[spillWriters.length];
+		this.pollLocks = new Object[spillWriters.length];
+		this.dispatching = new AtomicIntegerArray(spillWriters.length);
+		for(int p=0; p<spillWriters.length; p++) {
+			if(asyncSpill) {
+				spillWriters[p] = AsyncSpillWriter.start(spool(p), diskOptions.flushPolicy(), 
+														options.spillBufferRecords(), threadName("spill-writer", p));
+			} else {
+				spillWriters[p] = GroupCommitWriter.start(spool(p), diskOptions.flushPolicy(), threadName("spill-flusher", p));
+			}
+			ackTrackers[p] = new AckTracker(spool(p));
+			pollLocks[p] = new Object();
+		}
+		this.stage = ExecutionStage.create(options.stageType(), threads, queueCapacity, options.waitStrategy());
+		this.scheduler = new LaneScheduler(stage, lanes, DRAIN_BATCH_RECORDS, this::laneHasBacklog);
+		this.admission = options.admissionPolicy();
+		this.rateLimiter = admission.isRateLimited() ? new TokenBucket(admission.ratePerSecond(), admission.rateBurst()) : null;
+		this.dispatcher = new KeyedDispatcher(stage);
+		if(options.concurrencyLimit().isEnabled()) {
+			this.limiter = new AdaptiveLimiter(options.concurrencyLimit(), threads, this::applyLimit);
+			if(limiter.limit() != threads) {
+				stage.resize(limiter.limit()); // start within the configured bounds
+			}
+		} else {
+			this.limiter = null;
+		}
 		
-		this.threadCount = threads;
-		this.queueCapactiy = queueCapacity;
-		this.permits = new Semaphore(threads + queueCapacity, true);
-		this.processingDelayMs = processingDelayMs;
+		if(legacySpool.isPresent()) {
+			respoolLegacy(legacySpool.get());
+		}
+		// A backlog left by an earlier run is in flight until it is drained
+		this.inFlight.set(spooledTotal());
 		
-		this.drainerThread = new Thread(this::drainLoop, "disk-drainer");
-		this.drainerThread.start();
+		this.drainerThreads = new Thread[spillWriters.length];
+		for(int p=0; p<drainerThreads.length; p++) {
+			int partition = p;
+			drainerThreads[p] = new Thread(() -> drainLoop(partition), threadName("disk-drainer", p));
+			drainerThreads[p].start();
+		}
+	}
+	
+	/**
+     * The default lane keeps the original spool file name, so a backlog of an earlier run is
+     * recovered by the default lane; see {@link #respoolLegacy(LegacyQueueFile)} for spools
+     * of the first, unsegmented version.
+     */
+	private String spoolFileName(int lane) {
+		return lane == 0 ? DEFAULT_SPOOL : "tasks-" + lanes.get(lane).name() + ".queue";
+	}
+	
+	/**
+     * Deletes the spool files of every lane, including lanes of earlier configurations
+     * found in the working directory. Must not be called while a processor is open.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+	public static void deleteSpoolFiles() throws IOException {
+		PartitionedDiskQueue.deleteFiles(DEFAULT_SPOOL);
 		
-		this.idleWatchThread = new Thread(this::idleWatchLoop, "idle-watcher");
-		this.idleWatchThread.start();
+		Set<String> laneSpools = new TreeSet<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(Path.of("").toAbsolutePath())) {
+			for(Path candidate: stream) {
+				Matcher m = LANE_SPOOL.matcher(candidate.getFileName().toString());
+				if(m.matches()) {
+					laneSpools.add(m.group(1));
+				}
+			}
+		}
+		for(String laneSpool: laneSpools) {
+			PartitionedDiskQueue.deleteFiles(laneSpool);
+		}
+	}
+	
+	private String threadName(String prefix, int spool) {
+		String name = prefix;
+		if(lanes.size() > 1) name += "-" + lanes.get(laneOf(spool)).name();
+		if(partitionsPerLane > 1) name += "-" + (spool % partitionsPerLane);
+		return name;
+	}
+	
+	private FileDiskQueue spool(int spool) {
+		return laneQueues[laneOf(spool)].partition(spool % partitionsPerLane);
+	}
+	
+	private int laneOf(int spool) {
+		return spool / partitionsPerLane;
+	}
+	
+	private boolean laneHasBacklog(int lane) {
+		return !laneQueues[lane].isEmpty();
+	}
+	
+	private boolean spoolsEmpty() {
+		for(PartitionedDiskQueue laneQueue: laneQueues) {
+			if(!laneQueue.isEmpty()) return false;
+		}
+		return true;
+	}
+	
+	private long spooledTotal() {
+		long total = 0;
+		for(PartitionedDiskQueue laneQueue: laneQueues) {
+			total += laneQueue.size();
+		}
+		return total;
 	}
 	
 	/**
-     * Submits a task for execution.
+     * Spools the backlog of a spool file written by the first, unsegmented version, which held
+     * plain task texts. Each task goes to the default lane as if submitted again, and the old
+     * file is deleted once the tasks are durable. After a crash in between they are spooled
+     * again on the next start, so a task may run twice but is never lost.
+     */
+	private void respoolLegacy(LegacyQueueFile legacy) throws IOException {
+		for(ByteBuffer record: legacy.records()) {
+			String task = StandardCharsets.UTF_8.decode(record).toString();
+			Message message = Message.ofText(nextId(task), task);
+			spool(laneQueues[0].partitionFor(message.id())).append(MessageCodec.encode(message));
+		}
+		for(int p=0; p<partitionsPerLane; p++) {
+			spool(p).flush();
+		}
+		legacy.delete();
+	}
+	
+	private static MessageHandler sleepingHandler(long processingDelayMs) {
+		if(processingDelayMs < 0) { throw new IllegalArgumentException("processingDelayMs must be more than 0"); }
+		return MessageHandler.sleeping(processingDelayMs);
+	}
+	
+	/**
+     * Publishes {@link EngineEventType#SEGMENT_EVICTED_BY_RETENTION} for every segment the
+     * disk queue's retention policy evicts, once the configured overflow handler has run.
+     * A segment the handler fails on stays queued, unless it had already moved the file.
+     */
+	private DiskQueueOptions withEvictionEvents(DiskQueueOptions diskOptions) {
+		OverflowHandler configured = diskOptions.overflowHandler();
+		return diskOptions.withOverflowHandler(eviction -> {
+			try {
+				configured.onEviction(eviction);
+			}catch(IOException | RuntimeException ex) {
+				if(!Files.exists(eviction.segmentPath())) segmentEvicted(eviction);
+				throw ex;
+			}
+			segmentEvicted(eviction);
+		});
+	}
+	
+	private void segmentEvicted(SegmentEviction eviction) {
+		publish(EngineEventType.SEGMENT_EVICTED_BY_RETENTION,
+				eviction.segmentPath().getFileName().toString(),
+				"evicted " + eviction.unreadRecords() + " unread tasks",
+				Map.of("limit", eviction.limit().name(),
+						"bytes", eviction.bytes(),
+						"unreadRecords", eviction.unreadRecords()));
+		// Evicted tasks never complete; evictions while opening are covered by seeding the count after it
+		tasksFinished(eviction.unreadRecords());
+	}
+	
+	/**
+     * Submits a text task for execution.
+     *
+     * @param task the task payload/message
+     * @return what happened to the task
+     * @throws IOException if writing to the disk queue fails
+     * @throws InterruptedException if the caller thread is interrupted while waiting
+     * @see #submitTask(ByteBuffer)
+     */
+	public AdmissionResult submitTask(String task) throws IOException, InterruptedException{
+		Message message = Message.ofText(nextId(task), task);
+		return submit(message, message.id(), task);
+	}
+	
+	/**
+     * Submits a binary task for execution.
      *
      * <p>Rules:
      * <ul>
@@ -101,66 +401,276 @@ public class WorkerThreadPoolProcessor {
      *   <li>Otherwise execute directly in the thread pool.</li>
      * </ul>
      *
+     * <p>The payload is not copied unless the task is spilled to disk.
+     *
+     * @param payload the task bytes; must not be modified after submission
+     * @return what happened to the task
+     * @throws IOException if writing to the disk queue fails
+     * @throws InterruptedException if the caller thread is interrupted while waiting
+     */
+	public AdmissionResult submitTask(ByteBuffer payload) throws IOException, InterruptedException{
+		Message message = Message.ofBytes("bin-" + binarySequence.incrementAndGet(), payload);
+		return submit(message, message.id(), message.describe());
+	}
+	
+	/**
+     * Submits a binary task that runs after every earlier task with the same key has completed.
+     *
+     * @param key ordering key; tasks with equal keys share a disk partition and run one at a time, in order
+     * @param payload the task bytes; must not be modified after submission
+     * @return what happened to the task
+     * @throws IOException if writing to the disk queue fails
+     * @throws InterruptedException if the caller thread is interrupted while waiting
+     * @see #submitTask(ByteBuffer)
+     */
+	public AdmissionResult submitTask(String key, ByteBuffer payload) throws IOException, InterruptedException{
+		Objects.requireNonNull(key, "key");
+		Message message = Message.ofBytes("bin-" + binarySequence.incrementAndGet(), payload).withKey(key);
+		return submit(message, key, message.describe());
+	}
+	
+	/**
+     * Submits a text task that runs after every earlier task with the same key has completed.
+     *
+     * @param key ordering key; tasks with equal keys share a disk partition and run one at a time, in order
+     * @param task the task payload/message
+     * @return what happened to the task
+     * @throws IOException if writing to the disk queue fails
+     * @throws InterruptedException if the caller thread is interrupted while waiting
+     * @see #submitTask(String, ByteBuffer)
+     */
+	public AdmissionResult submitTask(String key, String task) throws IOException, InterruptedException{
+		Objects.requireNonNull(key, "key");
+		Message message = Message.ofText(nextId(task), task).withKey(key);
+		return submit(message, key, task);
+	}
+	
+	/**
+     * Submits a text task to a priority lane.
+     *
+     * <p>The task only goes to disk behind its own lane's backlog, and it is admitted against
+     * the lane's memory budget.
+     *
+     * @param lane one of the lanes in {@link EngineOptions#priorityLanes()}
      * @param task the task payload/message
+     * @return what happened to the task
+     * @throws IllegalArgumentException if the lane is not configured
+     * @throws IOException if writing to the disk queue fails
+     * @throws InterruptedException if the caller thread is interrupted while waiting
+     */
+	public AdmissionResult submitTask(PriorityLane lane, String task) throws IOException, InterruptedException{
+		Message message = Message.ofText(nextId(task), task);
+		return submit(laneIndex(lane), message, message.id(), task);
+	}
+	
+	/**
+     * Submits a keyed binary task to a priority lane.
+     *
+     * @param lane one of the lanes in {@link EngineOptions#priorityLanes()}
+     * @param key ordering key; tasks with equal keys run one at a time, in order
+     * @param payload the task bytes; must not be modified after submission
+     * @return what happened to the task
+     * @throws IllegalArgumentException if the lane is not configured
      * @throws IOException if writing to the disk queue fails
      * @throws InterruptedException if the caller thread is interrupted while waiting
+     * @see #submitTask(String, ByteBuffer)
      */
-	public void submitTask(String task) throws IOException, InterruptedException{
-		// Rule: If disk is NOT empty, always write new tasks to disk (disk priority)
-		String id = nextId(task);
-		publish(EngineEventType.SUBMITTED_TASK_FOR_EXECUTION, id, task, Map.of());
+	public AdmissionResult submitTask(PriorityLane lane, String key, ByteBuffer payload) throws IOException, InterruptedException{
+		Objects.requireNonNull(key, "key");
+		Message message = Message.ofBytes("bin-" + binarySequence.incrementAndGet(), payload).withKey(key);
+		return submit(laneIndex(lane), message, key, message.describe());
+	}
+	
+	private int laneIndex(PriorityLane lane) {
+		Integer index = laneIndexes.get(lane.name());
+		if(index == null) { throw new IllegalArgumentException("unknown priority lane: " + lane.name()); }
+		return index;
+	}
+	
+	private AdmissionResult submit(Message message, String key, String shown) throws IOException, InterruptedException{
+		return submit(0, message, key, shown);
+	}
+	
+	private AdmissionResult submit(int lane, Message message, String key, String shown) throws IOException, InterruptedException{
+		String id = message.id();
+		int partition = lane * partitionsPerLane + laneQueues[lane].partitionFor(key);
+		publish(EngineEventType.SUBMITTED_TASK_FOR_EXECUTION, id, shown, Map.of("lane", lanes.get(lane).name()));
 		
-		if(!fileQueue.isEmpty()) {
-			publish(EngineEventType.TASK_SPILLED_TO_DISK, id, task, Map.of("reason", "diskNotEmpty"));
-			
-			fileQueue.append(id+"::"+task);
-			signalIdleWatcher();
-			signalDrainer();
-			return;
+		String reason = tryAdmit(lane, partition);
+		if(reason == null) {
+			startAdmitted(message, partition, shown);
+			return AdmissionResult.ACCEPTED;
+		}
+		
+		boolean dropOldest = false;
+		switch(admission.action()) {
+			case BLOCK_WITH_TIMEOUT:
+				return blockUntilAdmitted(lane, partition, message, shown);
+			case REJECT:
+				publish(EngineEventType.TASK_REJECTED, id, shown, Map.of("reason", reason));
+				return AdmissionResult.REJECTED;
+			case DROP_NEWEST:
+				if(spooledRecords(partition) >= admission.maxSpooledRecords()) {
+					publish(EngineEventType.TASK_DROPPED, id, shown, Map.of("reason", reason, "policy", "dropNewest"));
+					return AdmissionResult.DROPPED;
+				}
+				break;
+			case DROP_OLDEST:
+				dropOldest = spooledRecords(partition) >= admission.maxSpooledRecords();
+				break;
+			default:
+				break;
 		}
 		
-		// Otherwise try to submit directly
-		if(!permits.tryAcquire()) {
-			publish(EngineEventType.TASK_SPILLED_TO_DISK, id, task, Map.of("reason", "noCapacity"));
+		ByteBuffer record = MessageCodec.encode(message); // fails before anything is counted or dropped
+		// Counted before the oldest task leaves, so the drop cannot look like the end of the run
+		inFlight.incrementAndGet();
+		if(dropOldest) {
+			dropOldest(partition);
+		}
+		publish(EngineEventType.TASK_SPILLED_TO_DISK, id, shown, Map.of("reason", reason));
+		try {
+			spill(partition, record, id, shown);
+		}catch(IOException | RuntimeException ex) {
+			taskFinished();
+			throw ex;
+		}
+		signalDrainer();
+		return AdmissionResult.SPILLED;
+	}
+	
+	/**
+     * Counts an admitted task as in flight and hands it to the stage.
+     * The count is taken first, since the task may complete before this returns.
+     */
+	private void startAdmitted(Message message, int partition, String shown) throws IOException, InterruptedException{
+		inFlight.incrementAndGet();
+		try {
+			executeUserTask(message, partition, shown);
+		}catch(IOException | RuntimeException ex) {
+			taskFinished(); // neither running nor spooled
+			throw ex;
+		}
+	}
+	
+	/**
+     * Reserves memory capacity for a new task, checking in order:
+     * <ul>
+     *   <li>the partition has no backlog: nothing spooled, staged or drained but not yet dispatched (disk priority keeps FIFO order behind spilled tasks)</li>
+     *   <li>the rate limit has a token</li>
+     *   <li>the lane budget and the stage have capacity</li>
+     * </ul>
+     * The token is checked first, so a rate-limited task never takes capacity it has to give back.
+     *
+     * @return {@code null} if capacity and a token were reserved, otherwise why not
+     */
+	private String tryAdmit(int lane, int partition) {
+		if(!spool(partition).isEmpty() || spillWriters[partition].hasStaged() || dispatching.get(partition) > 0) return "diskNotEmpty";
+		if(rateLimiter != null && !rateLimiter.tryAcquire()) return "rateLimited";
+		if(!scheduler.tryReserve(lane)) {
+			if(rateLimiter != null) rateLimiter.refund(1); // only a task that starts spends its token
+			return "noCapacity";
+		}
+		return null;
+	}
+	
+	/**
+     * Blocks the producer until the task is admitted or {@link AdmissionPolicy#blockTimeoutMs()} passes.
+     * Woken by completions; a rate-limited producer also wakes when its next token is due.
+     */
+	private AdmissionResult blockUntilAdmitted(int lane, int partition, Message message, String shown) throws IOException, InterruptedException{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(admission.blockTimeoutMs());
+		while(true) {
+			String reason = tryAdmit(lane, partition);
+			if(reason == null) {
+				startAdmitted(message, partition, shown);
+				return AdmissionResult.ACCEPTED;
+			}
 			
-			fileQueue.append(id+"::"+task);
-			signalIdleWatcher();
-			signalDrainer();
+			long left = deadline - System.nanoTime();
+			if(left <= 0) {
+				publish(EngineEventType.TASK_REJECTED, message.id(), shown, Map.of("reason", reason, "policy", "timeout"));
+				return AdmissionResult.TIMED_OUT;
+			}
+			long waitNanos = rateLimiter != null && "rateLimited".equals(reason)
+					? Math.max(rateLimiter.nanosUntilAvailable(), 1L)
+					: TimeUnit.MILLISECONDS.toNanos(BLOCK_RECHECK_MS);
+			awaitSignal(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(Math.min(left, waitNanos))));
+		}
+	}
+	
+	private long spooledRecords(int partition) {
+		return spool(partition).size();
+	}
+	
+	/**
+     * Drops the oldest spooled task of a partition to make room for a new one.
+     * The record is acknowledged like a completed one, so it is not replayed after a restart.
+     */
+	private void dropOldest(int partition) throws IOException {
+		AckTracker tracker = ackTrackers[partition];
+		DiskRecord rec;
+		long ticket;
+		synchronized(pollLocks[partition]) {
+			List<DiskRecord> oldest = spool(partition).pollBatch(1, Long.MAX_VALUE);
+			if(oldest.isEmpty()) return; // drained in the meantime
+			rec = oldest.get(0);
+			ticket = tracker.track(rec);
+		}
+		Message dropped;
+		try {
+			dropped = MessageCodec.decode(rec.payload());
+		}catch(RuntimeException ex) {
+			dropUndecodable(partition, rec, ticket, ex);
 			return;
 		}
-		
-		executeUserTask(id, task);
-		signalIdleWatcher();
+		publish(EngineEventType.TASK_DROPPED, dropped.id(), dropped.describe(), Map.of("reason", "spoolFull", "policy", "dropOldest"));
+		tracker.complete(ticket);
+		taskFinished();
+	}
+	
+	/**
+     * Drops a spooled record that does not decode. It can never run, so it is published as
+     * {@link EngineEventType#TASK_DROPPED} and acknowledged instead of stopping the drainer
+     * or holding back the commits of later records.
+     */
+	private void dropUndecodable(int partition, DiskRecord rec, long ticket, RuntimeException error) {
+		publish(EngineEventType.TASK_DROPPED, "record-" + rec.offset(), "[" + rec.payload().remaining() + " bytes]",
+				Map.of("reason", "undecodable", "error", error.toString()));
+		completeQuietly(ackTrackers[partition], ticket);
+		taskFinished();
 	}
 	
 	/**
      * Executes a user-submitted task directly via the executor.
      *
-     * <p>On completion the permit is released. If execution is rejected, the task is written to disk.
+     * <p>Once the handler's stage completes the stage reservation is released.
+     * If execution is rejected, the task is written to disk.
      *
-     * @param task the task payload/message
+     * @param message the task message
+     * @param partition disk partition the task is spilled to if rejected
+     * @param shown the payload as shown in events
      * @throws InterruptedException if interrupted while handling backoff/sleep
      * @throws IOException if writing to the disk queue fails after rejection
      */
-	private void executeUserTask(String id, String task) throws InterruptedException, IOException{
+	private void executeUserTask(Message message, int partition, String shown) throws InterruptedException, IOException{
+		String id = message.id();
+		int lane = laneOf(partition);
 		try {
-			executor.execute(() -> {
-				publish(EngineEventType.STARTED_TASK_PROCESSING, id, task, Map.of("source", "memory"));
-				try {
-					Thread.sleep(this.processingDelayMs);
-				}catch(InterruptedException ex) {
-					Thread.currentThread().interrupt();
-				}finally {
-					permits.release();
-					publish(EngineEventType.TASK_COMPLETED, id, task, Map.of("source", "memory"));
+			dispatcher.dispatch(message.key(), () -> {
+				publish(EngineEventType.STARTED_TASK_PROCESSING, id, shown, Map.of("source", "memory"));
+				return handle(message).whenComplete((result, error) -> {
+					scheduler.release(lane, 1);
+					publishOutcome(id, shown, "memory", error);
 					signalDrainer(); // wake drainer because capacity might now exist
-				}
+					taskFinished();
+				});
 			});
 		}catch(RejectedExecutionException ex) {
-			permits.release();
-			publish(EngineEventType.TASK_SPILLED_TO_DISK, id, task, Map.of("reason", "rejected"));
+			scheduler.release(lane, 1);
+			publish(EngineEventType.TASK_SPILLED_TO_DISK, id, shown, Map.of("reason", "rejected"));
 			
-			fileQueue.append(id+"::"+task);
+			spill(partition, MessageCodec.encode(message), id, shown);
 			signalDrainer();
 			Thread.sleep(100);
 		}
@@ -169,81 +679,177 @@ public class WorkerThreadPoolProcessor {
 	/**
      * Executes a task read from disk.
      *
-     * <p>After successful execution, the record is acknowledged on disk using {@code nextPos()}.
-     * If execution is rejected, the message is appended back to disk.
+     * <p>Once the handler's stage completes the record is marked complete in the partition's {@link AckTracker},
+     * which acknowledges the disk queue once every earlier record is complete as well.
+     * This includes a failed stage, so a failing task is not replayed after a restart.
+     * If execution is rejected, the record is appended back to disk as is and marked
+     * complete once that copy is durable. If the copy cannot be written the task is lost:
+     * it is published as {@link EngineEventType#TASK_DROPPED} and its record is marked
+     * complete all the same, since an uncommitted record would hold back the commits of
+     * every later record of the partition.
      *
-     * @param rec disk record containing the message and the next position for ack
+     * @param partition disk partition the record was read from
+     * @param rec disk record containing the encoded message
+     * @param ticket the record's ack tracker ticket
+     * @param message the decoded message
+     * @param shown the payload as shown in events
      * @throws InterruptedException if interrupted while handling backoff/sleep
      */
-	private void executeDiskTask(DiskRecord rec) throws InterruptedException{
-		MessageData data = new MessageData(rec.message());
+	private void executeDiskTask(int partition, DiskRecord rec, long ticket, Message message, String shown) throws InterruptedException{
+		AckTracker tracker = ackTrackers[partition];
+		String id = message.id();
+		int lane = laneOf(partition);
 		try {
-			publish(EngineEventType.STARTED_TASK_PROCESSING, data.id, data.payload, Map.of("source", "disk"));
-			
-			executor.execute(() ->{
-				try {
-					Thread.sleep(this.processingDelayMs);
-				}catch(InterruptedException ex) {
-					Thread.currentThread().interrupt();
-				}finally {
-					try {
-						fileQueue.ack(rec.nextPos());
-					}catch(IOException ex) {
-						ex.printStackTrace();
-					}
-					permits.release();
+			dispatcher.dispatch(message.key(), () -> {
+				publish(EngineEventType.STARTED_TASK_PROCESSING, id, shown, Map.of("source", "disk"));
+				return handle(message).whenComplete((result, error) -> {
+					completeQuietly(tracker, ticket);
+					scheduler.release(lane, 1);
 					signalDrainer();
-				}
-			publish(EngineEventType.TASK_COMPLETED, data.id, data.payload, Map.of("source", "disk"));
+					publishOutcome(id, shown, "disk", error);
+					taskFinished();
+				});
 			});
 		}catch(RejectedExecutionException ex) {
-			permits.release();
+			scheduler.release(lane, 1);
 			try {
-				publish(EngineEventType.TASK_SPILLED_TO_DISK, data.id, data.payload, Map.of("reason", "noCapacity"));
+				publish(EngineEventType.TASK_SPILLED_TO_DISK, id, shown, Map.of("reason", "noCapacity"));
 				
-				fileQueue.append(rec.message());
+				// Once the copy is durable it carries the task; if it fails, spill() reports the loss
+				spill(partition, rec.payload(), id, shown).whenComplete((pos, error) -> completeQuietly(tracker, ticket));
 				signalDrainer();
-			}catch(IOException io) {
-				io.printStackTrace();
+			}catch(IOException | RuntimeException failure) {
+				publish(EngineEventType.TASK_DROPPED, id, shown, Map.of("reason", "spillFailed", "error", failure.toString()));
+				completeQuietly(tracker, ticket);
+				taskFinished();
 			}
 			Thread.sleep(100);
 		}
 	}
 	
 	/**
-     * Background loop that drains tasks from disk into the executor when:
+     * Calls the handler on the current worker. A handler that throws or returns
+     * {@code null} yields a failed stage, so the caller's completion logic always runs.
+     * With an adaptive limit, the time until completion is reported to the limiter.
+     */
+	private CompletionStage<?> handle(Message message) {
+		CompletionStage<?> done;
+		long started = System.nanoTime();
+		if(limiter != null) limiter.onStart();
+		try {
+			done = Objects.requireNonNull(handler.handle(message), "handler returned null");
+		}catch(Exception ex) {
+			done = CompletableFuture.failedFuture(ex);
+		}
+		if(limiter == null) return done;
+		
+		return done.whenComplete((result, error) -> limiter.onComplete(System.nanoTime() - started, error != null));
+	}
+	
+	/**
+     * Resizes the stage to a new limit and publishes {@link EngineEventType#CONCURRENCY_LIMIT_CHANGED}.
+     */
+	private void applyLimit(AdaptiveLimiter.LimitChange change) {
+		stage.resize(change.to());
+		scheduler.signal(); // a larger limit is new capacity
+		signalDrainer();
+		
+		publish(EngineEventType.CONCURRENCY_LIMIT_CHANGED, 
+				"concurrency-limit",
+				"threads " + change.from() + " -> " + change.to(),
+				Map.of("from", change.from(),
+						"to", change.to(),
+						"reason", change.reason(),
+						"avgLatencyMs", change.averageLatencyMs(),
+						"throughputPerSec", change.throughputPerSecond(),
+						"peakInFlight", change.peakInFlight()));
+	}
+	
+	private void publishOutcome(String id, String shown, String source, Throwable error) {
+		if(error == null) {
+			publish(EngineEventType.TASK_COMPLETED, id, shown, Map.of("source", source));
+			return;
+		}
+		publish(EngineEventType.TASK_FAILED_TO_EXECUTE, id, shown, Map.of("source", source, "error", causeOf(error).toString()));
+	}
+	
+	private static Throwable causeOf(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+	
+	/**
+     * Background loop that drains tasks from one disk partition into the executor when:
      * <ul>
-     *   <li>disk is not empty</li>
-     *   <li>and a permit (capacity) is available</li>
+     *   <li>the partition is not empty</li>
+     *   <li>and the lane gets its weighted turn at the stage capacity</li>
+     *   <li>and, with a rate limit, tokens are available</li>
      * </ul>
      *
      * <p>Stops when {@code running} becomes false or on fatal disk errors.
+     *
+     * @param partition the partition this drainer owns
      */
-	private void drainLoop() {
+	private void drainLoop(int partition) {
+		DiskQueue partitionQueue = spool(partition);
+		int lane = laneOf(partition);
 		while(running.get()) {
 			try {
 				// If disk empty -> wait
-				if(fileQueue.isEmpty()) {
+				if(partitionQueue.isEmpty()) {
 					awaitSignal(200); // small timed wait to keep it simple
 					continue;
 				}
 				
-				// Disk has data. Only drain if we can get a permit.
-				if(!permits.tryAcquire(200, TimeUnit.MILLISECONDS)) {
+				// Disk has data. Only drain if the lane can reserve capacity, and no more than the backlog needs.
+				int wanted = (int) Math.min(DRAIN_BATCH_RECORDS, partitionQueue.size());
+				int granted = wanted == 0 ? 0 : scheduler.reserve(lane, wanted, 200, TimeUnit.MILLISECONDS);
+				if(granted == 0) {
 					continue;
 				}
-				
-				// Now we have a permit -> safe to poll
-				DiskRecord task = fileQueue.poll();				
-				if(task == null) {
-					// Disk got empty between checks
-					permits.release();
+				granted = takeTokens(lane, granted);
+				if(granted == 0) {
 					continue;
 				}
-				MessageData data = new MessageData(task.message());
-				publish(EngineEventType.TASK_RECOVERED_FROM_DISK, data.id, data.payload, Map.of());
 				
-				executeDiskTask(task);
+				// Now we hold the reservations -> safe to poll that many records.
+				// Until the batch is dispatched, a submit must not overtake it for the same key.
+				dispatching.incrementAndGet(partition);
+				try {
+					List<DiskRecord> tasks;
+					long[] tickets;
+					synchronized(pollLocks[partition]) {
+						tasks = partitionQueue.pollBatch(granted, DRAIN_BATCH_BYTES);
+						tickets = new long[tasks.size()];
+						for(int i=0; i<tickets.length; i++) {
+							tickets[i] = ackTrackers[partition].track(tasks.get(i));
+						}
+					}
+					if(tasks.size() < granted) {
+						// Disk got empty between checks or the byte budget was reached
+						scheduler.release(lane, granted - tasks.size());
+						if(rateLimiter != null) rateLimiter.refund(granted - tasks.size());
+					}
+					
+					for(int i=0; i<tickets.length; i++) {
+						DiskRecord task = tasks.get(i);
+						long ticket = tickets[i];
+						Message message;
+						try {
+							message = MessageCodec.decode(task.payload());
+						}catch(RuntimeException ex) {
+							dropUndecodable(partition, task, ticket, ex);
+							scheduler.release(lane, 1);
+							if(rateLimiter != null) rateLimiter.refund(1);
+							continue;
+						}
+						String shown = message.describe();
+						publish(EngineEventType.TASK_RECOVERED_FROM_DISK, message.id(), shown, Map.of());
+						
+						executeDiskTask(partition, task, ticket, message, shown);
+					}
+				}finally {
+					dispatching.decrementAndGet(partition);
+				}
 			}catch(InterruptedException ex) {
 				Thread.currentThread().interrupt();
                 break;
@@ -255,38 +861,68 @@ public class WorkerThreadPoolProcessor {
 		}
 	}
 	
-	 /**
-     * Wakes up the drainer thread to re-check disk and available capacity.
+	/**
+     * Takes a rate-limit token for each reserved record, so spilled tasks start no faster
+     * than tasks admitted from memory. Tokens are taken only once capacity is held, so a
+     * drainer waiting for capacity does not hold them back from producers. Reservations
+     * without a token are released; without any, this waits until the next token is due.
+     *
+     * @return the number of reservations that have a token
      */
-	private void signalDrainer() {
-		lock.lock();
-		try {
-			wakeUp.signalAll();
-		}finally {
-			lock.unlock();
+	private int takeTokens(int lane, int reserved) throws InterruptedException{
+		if(rateLimiter == null) return reserved;
+		
+		int tokens = rateLimiter.tryAcquire(reserved);
+		if(tokens < reserved) {
+			scheduler.release(lane, reserved - tokens);
+		}
+		if(tokens == 0) {
+			awaitSignal(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(rateLimiter.nanosUntilAvailable())));
 		}
+		return tokens;
 	}
 	
-	private void signalIdleWatcher() {
-		hasSeenWork.set(true);
-		
-		lock.lock();
+	/**
+     * Hands an encoded task to the partition's spill writer.
+     *
+     * <p>The drainer is woken again once the task is durable, because with
+     * {@link SpillMode#ASYNC} it only reaches the disk queue after this returns.
+     * An asynchronous write failure leaves no caller to see it: the task is lost, so it is
+     * published as {@link EngineEventType#TASK_DROPPED} and no longer counted as in flight.
+     *
+     * @return future completed when the task is durable
+     * @throws IOException if the task could not be handed over or written
+     */
+	private CompletableFuture<Long> spill(int partition, ByteBuffer payload, String id, String shown) throws IOException {
+		CompletableFuture<Long> durable = spillWriters[partition].append(payload);
+		durable.whenComplete((pos, ex) -> {
+			if(ex != null && asyncSpill) {
+				publish(EngineEventType.TASK_DROPPED, id, shown, Map.of("reason", "spillFailed", "error", causeOf(ex).toString()));
+				taskFinished();
+			}
+			signalDrainer();
+		});
+		return durable;
+	}
+	
+	private static void completeQuietly(AckTracker tracker, long ticket) {
 		try {
-			wakeUp.signalAll();
-		} finally {
-			lock.unlock();
+			tracker.complete(ticket);
+		}catch(IOException ex) {
+			ex.printStackTrace();
 		}
 	}
 	
-	private void waitForWorkSignal() throws InterruptedException {
+	 /**
+     * Wakes up the drainer thread to re-check disk and available capacity.
+     */
+	private void signalDrainer() {
 		lock.lock();
 		try {
-			while(!hasSeenWork.get() && idleWatchRunning.get()) {
-				wakeUp.await();
-			}
-		} finally {
+			wakeUp.signalAll();
+		}finally {
 			lock.unlock();
-		}	
+		}
 	}
 	
 	/**
@@ -304,86 +940,68 @@ public class WorkerThreadPoolProcessor {
 		}
 	}
 	
-	private void publishRunIdle() {
-		publish(EngineEventType.RUN_IDLE, "run", "engine is idle", Map.of());
+	/**
+     * Counts an admitted task as done and publishes {@link EngineEventType#RUN_IDLE}
+     * if it was the last one in flight.
+     */
+	private void taskFinished() {
+		tasksFinished(1);
+	}
+	
+	private void tasksFinished(long count) {
+		if(count > 0 && inFlight.addAndGet(-count) == 0) {
+			publish(EngineEventType.RUN_IDLE, "run", "engine is idle", Map.of());
+		}
 	}
 	
 	/**
      * Shuts down the pool in a controlled way:
      * <ul>
-     *   <li>wait until disk queue is empty</li>
+     *   <li>wait until disk queue and spill staging are empty</li>
      *   <li>stop and join the drainer thread</li>
-     *   <li>shutdown the executor and await termination</li>
-     *   <li>close the disk queue</li>
+     *   <li>wait until no task is waiting for an earlier task with its key</li>
+     *   <li>shutdown the execution stage and await termination</li>
+     *   <li>flush pending spills and close the disk queue</li>
      * </ul>
      *
      * @throws InterruptedException if interrupted while waiting for shutdown steps
      * @throws IOException if closing the disk queue fails
      */
 	public void shutdownGracefully() throws InterruptedException, IOException{
-		while(!fileQueue.isEmpty()) {
+		while(!spoolsEmpty() || hasStagedSpills()) {
 			Thread.sleep(100);
 		}
 		running.set(false);
 		signalDrainer();
 		
-		drainerThread.interrupt();
-		drainerThread.join();
-		
-		idleWatchRunning.set(false);
-		signalIdleWatcher();
-		idleWatchThread.interrupt();
-		idleWatchThread.join();
+		for(Thread drainer: drainerThreads) {
+			drainer.interrupt();
+		}
+		for(Thread drainer: drainerThreads) {
+			drainer.join();
+		}
 		
-		executor.shutdown();
-		if(!executor.awaitTermination(500_000, TimeUnit.MILLISECONDS)) {
-			executor.shutdownNow();
+		// Tasks waiting behind their key are handed to the stage only as their predecessor completes
+		while(!dispatcher.isIdle()) {
+			Thread.sleep(10);
 		}
-		fileQueue.close();
-	}
-	
-	private void idleWatchLoop() {
-		while(idleWatchRunning.get()) {
-			try {
-				// 1) Sleep until we have received at least one "work signal"
-				waitForWorkSignal();
-				
-				while(idleWatchRunning.get()) {
-					
-					if(isIdleNow()) {
-						if(!idleEmitted.getAndSet(true)) {
-							publishRunIdle();
-						}
-						
-						// reset workSignal and go back to sleep until next submit
-						hasSeenWork.set(false);
-						break;
-					} else {
-						// not idle yet: allow future idle emission
-						idleEmitted.set(false);
-						
-						// avoid busy spinning; wait for signals or timeout
-						awaitSignal(300);
-					}
-				}
-			} catch(InterruptedException ex) {
-				Thread.currentThread().interrupt();
-				break;
-			} catch(Exception ignored) {}
+		stage.shutdown();
+		if(!stage.awaitTermination(500_000, TimeUnit.MILLISECONDS)) {
+			stage.shutdownNow();
+		}
+		for(SpillWriter spillWriter: spillWriters) {
+			spillWriter.close();
+		}
+		for(PartitionedDiskQueue laneQueue: laneQueues) {
+			laneQueue.close();
 		}
 	}
 	
-	private boolean isIdleNow(){
-		boolean queueEmpty = this.queue.isEmpty();
-		boolean noActiveThreads = (this.executor.getActiveCount() == 0);
-		boolean noPermitActive = (this.permits.availablePermits() == (this.threadCount + this.queueCapactiy));
-		
-		try {
-			boolean diskEmpty = this.fileQueue.isEmpty();
-			return queueEmpty & noActiveThreads & diskEmpty & noPermitActive;
-		}catch(IOException ignored) {}
-		
-		return queueEmpty & noActiveThreads & noPermitActive;
+	private boolean hasStagedSpills() {
+		for(SpillWriter spillWriter: spillWriters) {
+			if(spillWriter.hasStaged()) return true;
+		}
+		return false;
 	}
 	
 	// Publisher methods added
@@ -396,23 +1014,18 @@ public class WorkerThreadPoolProcessor {
 		eventPublisher.publish(new EngineEvent(type, id, payload, Instant.now(), meta));
 	}
 	
+	/**
+     * Derives the message id from the task text. The id is capped at {@link #MAX_ID_CHARS}
+     * characters, so its UTF-8 form always fits the length prefix of {@link MessageCodec}.
+     */
 	private String nextId(String message) {
 		int idx = message.indexOf("-");
 		String id = idx > 0 ? message.substring(idx+1) : "unknown";
+		if(id.length() > MAX_ID_CHARS) {
+			int end = Character.isHighSurrogate(id.charAt(MAX_ID_CHARS - 1)) ? MAX_ID_CHARS - 1 : MAX_ID_CHARS;
+			id = id.substring(0, end);
+		}
 		
 		return "msg-" + id;
 	}
-	
-	private class MessageData{
-		String id;
-		String payload;
-		
-		public MessageData(String message) {
-			if(message == null) return;
-			
-			int idx = message.indexOf("::");
-			this.id = idx > 0 ? message.substring(0, idx) : "unknown";
-			this.payload = idx > 0 ? message.substring(idx + 2) : message;
-		}
-	}
 }
\ No newline at end of file
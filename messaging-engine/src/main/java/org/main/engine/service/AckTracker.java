@@ -0,0 +1,110 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+
+import org.main.engine.dto.DiskRecord;
+
+/**
+ * Turns out-of-order completions of polled records into in-order acknowledgements.
+ *
+ * <p>{@link DiskQueue#ack(long)} commits everything before the given position, so acking
+ * whichever record finishes first would also commit earlier records that are still
+ * running or that failed. The tracker instead remembers every polled record in poll
+ * order and moves the committed watermark only over a contiguous prefix of completed
+ * records:
+ * <pre>
+ * polled:    r1  r2  r3  r4
+ * completed:     x       x     -&gt; nothing acked
+ * completed: x   x       x     -&gt; acked up to r2
+ * </pre>
+ *
+ * <p>{@link #track(DiskRecord)} must be called by the single thread polling the queue,
+ * in poll order. {@link #complete(long)} may be called from any thread.
+ */
+public class AckTracker {
+	private final DiskQueue queue;
+
+	// Ring of in-flight records, tickets [headTicket, nextTicket); guarded by this
+	private long[] nextPositions = new long[64];
+	private boolean[] done = new boolean[64];
+	private long headTicket = 0L;
+	private long nextTicket = 0L;
+	private long committedPos = -1L;
+
+	public AckTracker(DiskQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+     * Registers a polled record.
+     *
+     * @param rec the record, in poll order
+     * @return ticket to pass to {@link #complete(long)} once the record is handled
+     */
+	public synchronized long track(DiskRecord rec) {
+		if(nextTicket - headTicket == nextPositions.length) {
+			grow();
+		}
+		int slot = slot(nextTicket);
+		nextPositions[slot] = rec.nextPos();
+		done[slot] = false;
+		return nextTicket++;
+	}
+
+	/**
+     * Marks a record as handled, either processed or safely re-queued, and acknowledges
+     * the queue up to the end of the longest completed prefix.
+     *
+     * @param ticket ticket returned by {@link #track(DiskRecord)}
+     * @throws IOException if acknowledging the queue fails
+     */
+	public void complete(long ticket) throws IOException {
+		long ackPos;
+		synchronized(this) {
+			if(ticket < headTicket || ticket >= nextTicket) {
+				throw new IllegalArgumentException("unknown or already committed ticket " + ticket);
+			}
+			done[slot(ticket)] = true;
+
+			long before = committedPos;
+			while(headTicket < nextTicket && done[slot(headTicket)]) {
+				committedPos = Math.max(committedPos, nextPositions[slot(headTicket)]);
+				headTicket++;
+			}
+			if(committedPos == before) return;
+			ackPos = committedPos;
+		}
+		// outside the lock: a late, smaller ack is ignored by the queue
+		queue.ack(ackPos);
+	}
+
+	/**
+     * @return the position acknowledged so far, or {@code -1} before the first ack
+     */
+	public synchronized long committedPosition() {
+		return committedPos;
+	}
+
+	/**
+     * @return records tracked but not yet covered by the watermark
+     */
+	public synchronized int inFlight() {
+		return (int) (nextTicket - headTicket);
+	}
+
+	private int slot(long ticket) {
+		return (int) (ticket % nextPositions.length);
+	}
+
+	private void grow() {
+		int live = (int) (nextTicket - headTicket);
+		long[] positions = new long[nextPositions.length * 2];
+		boolean[] flags = new boolean[done.length * 2];
+		for(int i=0; i<live; i++) {
+			positions[(int) ((headTicket + i) % positions.length)] = nextPositions[slot(headTicket + i)];
+			flags[(int) ((headTicket + i) % flags.length)] = done[slot(headTicket + i)];
+		}
+		nextPositions = positions;
+		done = flags;
+	}
+}
@@ -0,0 +1,290 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spills records through a dedicated writer thread, so producers never wait for disk I/O.
+ *
+ * <p>{@link #append(ByteBuffer)} only places the record in a bounded, lock-free staging
+ * ring and returns. The writer thread drains whatever is staged and writes it with one
+ * {@link DiskQueue#appendBuffers(List)} call per batch; the queue's flush policy then
+ * decides when the batch is forced. The returned future completes once the record is
+ * durable, so a slow fsync delays the futures but not the producers.
+ *
+ * <p>When the ring is full, producers back off until the writer has made room. The ring
+ * size therefore bounds both memory use and how far producers can run ahead of the disk.
+ *
+ * <p>The writer also flushes pending records while it is idle, so futures never wait for the
+ * next append: once the interval has passed for time-based flush policies, and once appends
+ * have paused for a short idle period for record-count ones.
+ */
+public class AsyncSpillWriter implements SpillWriter {
+	private static final int MAX_BATCH_RECORDS = 1024;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long IDLE_FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(GroupCommitWriter.IDLE_FLUSH_MS);
+	private static final long FULL_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final DiskQueue queue;
+	private final long flushIntervalNanos;
+
+	// Bounded MPSC ring: a slot is free for claim n when its sequence is n and
+	// holds claim n once its sequence is n + 1
+	private final StagedAppend[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong claimed = new AtomicLong();
+	private long consumed; // only touched by the consuming thread
+	private volatile long written;
+
+	private final DurableWaiters waiters; // guarded by itself
+	// Producers between their running check and publishing their slot; close() waits for them
+	private final AtomicInteger appending = new AtomicInteger();
+
+	private final Thread writer;
+	private volatile boolean running = true;
+	private volatile boolean writerIdle;
+
+	/**
+     * Creates a writer with a thread named {@code spill-writer} and starts it.
+     *
+     * @see #start(DiskQueue, FlushPolicy, int, String)
+     */
+	public static AsyncSpillWriter start(DiskQueue queue, FlushPolicy flushPolicy, int capacity) {
+		return start(queue, flushPolicy, capacity, "spill-writer");
+	}
+
+	/**
+     * Creates a writer and starts its thread. The thread is only started once the writer
+     * is fully constructed, so it never sees a partially initialized ring.
+     *
+     * @param queue target queue
+     * @param flushPolicy the queue's flush policy; a time trigger is also applied while idle
+     * @param capacity staging ring size in records, rounded up to a power of two
+     * @param threadName name of the writer thread
+     * @return the running writer
+     */
+	public static AsyncSpillWriter start(DiskQueue queue, FlushPolicy flushPolicy, int capacity, String threadName) {
+		AsyncSpillWriter spillWriter = new AsyncSpillWriter(queue, flushPolicy, capacity, threadName);
+		spillWriter.writer.start();
+		return spillWriter;
+	}
+
+	private AsyncSpillWriter(DiskQueue queue, FlushPolicy flushPolicy, int capacity, String threadName) {
+		if(capacity <= 0 || capacity > (1 << 30)) { throw new IllegalArgumentException("capacity must be in (0, 2^30]"); }
+		this.queue = queue;
+		this.waiters = new DurableWaiters(queue);
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushPolicy.everyMillis());
+
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) size <<= 1;
+		this.slots = new StagedAppend[size];
+		this.sequences = new AtomicLongArray(size);
+		for(int i=0; i<size; i++) {
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+
+		this.writer = new Thread(this::writeLoop, threadName);
+		this.writer.setDaemon(true);
+	}
+
+	/**
+     * Stages a binary record for the writer thread.
+     *
+     * <p>Returns as soon as the record is staged; it only waits while the ring is full.
+     *
+     * @param payload record bytes; must not be modified until the future completes
+     * @return future completed when the record is durable
+     * @throws IOException if the writer is closed
+     */
+	@Override
+	public CompletableFuture<Long> append(ByteBuffer payload) throws IOException {
+		StagedAppend staged = new StagedAppend(payload);
+
+		// Counted before the running check: close() either is seen here or sees this append
+		appending.incrementAndGet();
+		try {
+			return stage(staged);
+		}finally {
+			appending.decrementAndGet();
+		}
+	}
+
+	private CompletableFuture<Long> stage(StagedAppend staged) throws IOException {
+		long claim = claimed.get();
+		while(true) {
+			if(!running) {
+				throw new IOException("spill writer is closed");
+			}
+			long free = sequences.get((int) claim & mask) - claim;
+			if(free == 0) {
+				if(claimed.compareAndSet(claim, claim + 1)) break;
+				claim = claimed.get();
+			}else if(free < 0) {
+				// Ring is full: wait for the writer to consume the oldest slot
+				wakeWriter();
+				LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+				claim = claimed.get();
+			}else {
+				claim = claimed.get();
+			}
+		}
+
+		int slot = (int) claim & mask;
+		slots[slot] = staged;
+		sequences.set(slot, claim + 1);
+		if(writerIdle) {
+			wakeWriter();
+		}
+		return staged.durable;
+	}
+
+	@Override
+	public boolean hasStaged() {
+		return written < claimed.get();
+	}
+
+	/**
+     * Waits until everything staged so far is written, then flushes the queue.
+     *
+     * @throws IOException if the flush fails or the caller is interrupted
+     */
+	@Override
+	public void flush() throws IOException {
+		long target = claimed.get();
+		while(written < target) {
+			if(!writer.isAlive()) {
+				writeStaged(); // the writer has exited, so this thread is the only consumer
+				continue;
+			}
+			wakeWriter();
+			LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+			if(Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for staged spills");
+			}
+		}
+		synchronized(waiters) {
+			waiters.flush();
+		}
+	}
+
+	/**
+     * Stops accepting records, writes and flushes what is staged and stops the writer thread.
+     * Appends already past their running check are waited for, so their records are
+     * written as well. The underlying queue is left open.
+     *
+     * @throws IOException if the final write or flush fails
+     */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		wakeWriter();
+		try {
+			while(appending.get() > 0) {
+				wakeWriter(); // an append may be waiting for room in a full ring
+				LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+				if(Thread.interrupted()) { throw new InterruptedException(); }
+			}
+			writer.join();
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while stopping the spill writer");
+		}
+		flush();
+	}
+
+	private void writeLoop() {
+		long lastFlushNanos = System.nanoTime();
+		long lastWriteNanos = lastFlushNanos;
+		while(running || hasStaged()) {
+			if(writeStaged() > 0) {
+				lastWriteNanos = System.nanoTime();
+				continue;
+			}
+
+			long now = System.nanoTime();
+			if(flushIntervalNanos > 0 ? now - lastFlushNanos >= flushIntervalNanos : now - lastWriteNanos >= IDLE_FLUSH_NANOS) {
+				flushQuietly(); // a no-op without waiting futures
+				lastFlushNanos = now;
+			}
+
+			// Announce the idle state before the final check so producers cannot miss it
+			writerIdle = true;
+			if(running && !hasStaged()) {
+				LockSupport.parkNanos(Math.min(flushIntervalNanos > 0 ? flushIntervalNanos : IDLE_FLUSH_NANOS, IDLE_PARK_NANOS));
+			}
+			writerIdle = false;
+		}
+	}
+
+	/**
+     * Writes one batch of staged records. Must only be called by the consuming thread.
+     *
+     * @return number of records taken from the ring
+     */
+	private int writeStaged() {
+		List<StagedAppend> batch = new ArrayList<>();
+		while(batch.size() < MAX_BATCH_RECORDS) {
+			int slot = (int) consumed & mask;
+			if(sequences.get(slot) != consumed + 1) break;
+
+			batch.add(slots[slot]);
+			slots[slot] = null;
+			sequences.set(slot, consumed + slots.length);
+			consumed++;
+		}
+		if(batch.isEmpty()) return 0;
+
+		List<ByteBuffer> payloads = new ArrayList<>(batch.size());
+		for(StagedAppend staged: batch) {
+			payloads.add(staged.payload);
+		}
+
+		synchronized(waiters) {
+			try {
+				long endPos = queue.appendBuffers(payloads);
+				for(StagedAppend staged: batch) {
+					waiters.add(endPos, staged.durable);
+				}
+				waiters.completeDurable();
+			}catch(IOException | RuntimeException ex) {
+				// A rejected record fails its batch but must not stop the writer thread
+				for(StagedAppend staged: batch) {
+					staged.durable.completeExceptionally(ex);
+				}
+			}
+		}
+		written = consumed;
+		return batch.size();
+	}
+
+	private void flushQuietly() {
+		synchronized(waiters) {
+			waiters.flushQuietly();
+		}
+	}
+
+	private void wakeWriter() {
+		LockSupport.unpark(writer);
+	}
+
+	private static final class StagedAppend {
+		final ByteBuffer payload;
+		final CompletableFuture<Long> durable = new CompletableFuture<>();
+
+		StagedAppend(ByteBuffer payload) {
+			this.payload = payload;
+		}
+	}
+}
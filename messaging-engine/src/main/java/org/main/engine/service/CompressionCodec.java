@@ -0,0 +1,68 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses record batches written by {@link FileDiskQueue}.
+ *
+ * <p>The codec {@link #id()} is stored with every compressed batch, so a queue can read
+ * batches written with any built-in codec regardless of its current configuration.
+ * Implementations must be thread-safe; queues may share one instance.
+ */
+public interface CompressionCodec {
+
+	/**
+	 * Identifier stored in each compressed batch. {@code 0} is reserved for {@link #none()}.
+	 */
+	byte id();
+
+	/**
+	 * Compresses the bytes between the buffer's position and limit.
+	 * The input buffer is not modified.
+	 *
+	 * @param input uncompressed bytes
+	 * @return a new buffer holding the compressed bytes, ready to be read
+	 */
+	ByteBuffer compress(ByteBuffer input);
+
+	/**
+	 * Decompresses the bytes between the buffer's position and limit.
+	 *
+	 * @param input compressed bytes
+	 * @param uncompressedBytes exact size of the original data
+	 * @return the original bytes
+	 * @throws IOException if the input is not valid for this codec or has the wrong size
+	 */
+	byte[] decompress(ByteBuffer input, int uncompressedBytes) throws IOException;
+
+	/**
+	 * Disables compression; every record is written on its own.
+	 */
+	static CompressionCodec none() {
+		return NoCompression.INSTANCE;
+	}
+
+	/**
+	 * JDK {@link java.util.zip.Deflater} with the default compression level.
+	 */
+	static CompressionCodec deflate() {
+		return DeflateCodec.DEFAULT;
+	}
+
+	/**
+	 * JDK {@link java.util.zip.Deflater} with the given level, from 1 (fastest) to 9 (smallest).
+	 */
+	static CompressionCodec deflate(int level) {
+		return new DeflateCodec(level);
+	}
+
+	/**
+	 * Looks up the built-in codec with the given identifier.
+	 *
+	 * @return the codec, or {@code null} if no built-in codec uses the identifier
+	 */
+	static CompressionCodec builtIn(byte id) {
+		return id == DeflateCodec.ID ? DeflateCodec.DEFAULT : null;
+	}
+}
@@ -0,0 +1,33 @@
+package org.main.engine.service;
+
+/**
+ * Counters describing how batch compression performs for a {@link FileDiskQueue}.
+ *
+ * <p>CPU times are measured on the calling thread around the codec calls only,
+ * so they exclude disk I/O.
+ *
+ * @param batchesWritten compressed batches appended
+ * @param recordsWritten records appended inside compressed batches
+ * @param rawBytes size of those records before compression, including their length prefixes
+ * @param compressedBytes size of the compressed batch bodies
+ * @param compressCpuNanos CPU time spent compressing
+ * @param batchesRead compressed batches read back
+ * @param decompressCpuNanos CPU time spent decompressing
+ * @param batchesSkipped batches written uncompressed because compression did not make them smaller
+ */
+public record CompressionStats(long batchesWritten,
+								long recordsWritten,
+								long rawBytes,
+								long compressedBytes,
+								long compressCpuNanos,
+								long batchesRead,
+								long decompressCpuNanos,
+								long batchesSkipped) {
+
+	/**
+	 * Returns raw bytes divided by compressed bytes, or {@code 1.0} before the first batch.
+	 */
+	public double ratio() {
+		return compressedBytes == 0 ? 1.0 : (double) rawBytes / compressedBytes;
+	}
+}
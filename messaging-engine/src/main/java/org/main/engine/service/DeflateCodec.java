@@ -0,0 +1,81 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link CompressionCodec} backed by the JDK's zlib {@link Deflater} and {@link Inflater}.
+ *
+ * <p>A fresh deflater/inflater is used per batch and released right after, so one
+ * instance can be shared by any number of queues.
+ */
+final class DeflateCodec implements CompressionCodec {
+	static final byte ID = 1;
+	static final DeflateCodec DEFAULT = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+
+	private final int level;
+
+	DeflateCodec(int level) {
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < 1 || level > 9)) {
+			throw new IllegalArgumentException("level must be between 1 and 9");
+		}
+		this.level = level;
+	}
+
+	@Override
+	public byte id() {
+		return ID;
+	}
+
+	@Override
+	public ByteBuffer compress(ByteBuffer input) {
+		Deflater deflater = new Deflater(level);
+		try {
+			deflater.setInput(input.duplicate());
+			deflater.finish();
+
+			ByteBuffer out = ByteBuffer.allocate(Math.max(64, input.remaining() / 2));
+			while(!deflater.finished()) {
+				if(!out.hasRemaining()) {
+					out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+				}
+				deflater.deflate(out);
+			}
+			return out.flip();
+		}finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public byte[] decompress(ByteBuffer input, int uncompressedBytes) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(input.duplicate());
+
+			byte[] out = new byte[uncompressedBytes];
+			int n = 0;
+			while(n < out.length && !inflater.finished()) {
+				int read = inflater.inflate(out, n, out.length - n);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				n += read;
+			}
+			if(n != out.length || !inflater.finished()) {
+				throw new IOException("Corrupt batch: expected " + uncompressedBytes + " bytes, inflated " + n);
+			}
+			return out;
+		}catch(DataFormatException ex) {
+			throw new IOException("Corrupt batch: " + ex.getMessage(), ex);
+		}finally {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "deflate(" + level + ")";
+	}
+}
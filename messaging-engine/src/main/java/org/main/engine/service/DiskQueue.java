@@ -1,6 +1,10 @@
 package org.main.engine.service;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.main.engine.dto.DiskRecord;
 
@@ -9,15 +13,78 @@ import org.main.engine.dto.DiskRecord;
  *
  * <p>Implementations are responsible for persisting messages,
  * reading them in order, and acknowledging processed entries.
+ *
+ * <p>Records are opaque bytes. The {@code String} methods are UTF-8 adapters
+ * over the binary ones.
  */
 public interface DiskQueue {
+	/**
+     * Appends a binary record to the end of the queue.
+     *
+     * <p>The bytes between the buffer's position and limit are written as they are;
+     * the buffer itself is not modified.
+     *
+     * @param payload record bytes
+     * @return queue position right after the appended record
+     * @throws IOException if the write fails
+     */
+	long append(ByteBuffer payload) throws IOException;
+	
+	/**
+     * Appends several binary records with a single write.
+     *
+     * <p>The batch is flushed as a whole according to the queue's flush policy,
+     * so either none or all of its records become durable with the next flush.
+     *
+     * @param payloads records to persist, in order
+     * @return queue position right after the last appended record
+     * @throws IOException if the write fails
+     */
+	long appendBuffers(List<ByteBuffer> payloads) throws IOException;
+	
 	/**
      * Appends a message to the end of the queue.
      *
      * @param msg message to persist
+     * @return queue position right after the appended record
      * @throws IOException if the write fails
      */
-	void append(String msg) throws IOException;
+	default long append(String msg) throws IOException {
+		return append(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+     * Appends several messages with a single write.
+     *
+     * @param msgs messages to persist, in order
+     * @return queue position right after the last appended record
+     * @throws IOException if the write fails
+     * @see #appendBuffers(List)
+     */
+	default long appendBatch(List<String> msgs) throws IOException {
+		List<ByteBuffer> payloads = new ArrayList<>(msgs.size());
+		for(String msg: msgs) {
+			payloads.add(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)));
+		}
+		return appendBuffers(payloads);
+	}
+	
+	/**
+     * Forces all written records to disk.
+     *
+     * @throws IOException if the flush fails
+     */
+	void flush() throws IOException;
+	
+	/**
+     * Returns the position up to which records are known to be on disk.
+     *
+     * <p>A record is durable once its end position (as returned by
+     * {@link #append(ByteBuffer)}) is less than or equal to this value.
+     *
+     * @return durable queue position
+     */
+	long durablePosition();
 	
 	/**
      * Reads the next available record from disk without removing it.
@@ -30,6 +97,33 @@ public interface DiskQueue {
      */
 	DiskRecord poll() throws IOException;
 	
+	/**
+     * Reads up to {@code maxRecords} available records in one call.
+     *
+     * <p>Reading stops early once the payloads read so far reach {@code maxBytes};
+     * the first record is always returned, whatever its size. Every returned record
+     * must be acknowledged like one returned by {@link #poll()}.
+     *
+     * <p>The default implementation calls {@link #poll()} repeatedly.
+     *
+     * @param maxRecords upper bound on the number of records returned
+     * @param maxBytes payload byte budget for the batch
+     * @return the records read, in order; empty if the queue is empty
+     * @throws IOException if reading fails or data is corrupt
+     */
+	default List<DiskRecord> pollBatch(int maxRecords, long maxBytes) throws IOException {
+		if(maxRecords <= 0) { throw new IllegalArgumentException("maxRecords must be more than 0"); }
+		
+		List<DiskRecord> batch = new ArrayList<>();
+		long bytes = 0;
+		DiskRecord rec;
+		while(batch.size() < maxRecords && bytes < maxBytes && (rec = poll()) != null) {
+			batch.add(rec);
+			bytes += rec.payload().remaining();
+		}
+		return batch;
+	}
+	
 	/**
      * Acknowledges that all data up to the given position
      * has been successfully processed.
@@ -47,6 +141,24 @@ public interface DiskQueue {
      */
 	boolean isEmpty() throws IOException;
 	
+	/**
+     * Returns the number of records that have been appended but not yet polled.
+     *
+     * <p>Intended for metrics; the value may be stale by the time it is used.
+     *
+     * @return unread record count
+     */
+	long size();
+	
+	/**
+     * Returns the on-disk size of the records that have been appended but not yet polled.
+     *
+     * <p>Intended for metrics; the value may be stale by the time it is used.
+     *
+     * @return unread bytes, including record framing
+     */
+	long byteSize();
+	
 	 /**
      * Closes the queue and releases any underlying resources.
      *
@@ -0,0 +1,93 @@
+package org.main.engine.service;
+
+import java.util.Objects;
+
+/**
+ * Tuning options for {@link FileDiskQueue}.
+ *
+ * <p>Use {@link #defaults()} and the {@code with*} methods to derive a configuration:
+ * <pre>
+ * DiskQueueOptions.defaults().withFlushPolicy(FlushPolicy.everyMillis(5))
+ * </pre>
+ *
+ * @param flushPolicy when appended records are forced to disk
+ * @param segmentBytes size after which the log rolls over to a new segment file
+ * @param checkpointIntervalMs minimum time between two commit checkpoints; {@code 0} checkpoints on every ack
+ * @param readMode how records are read back from disk
+ * @param compression codec for multi-record batches, or {@link CompressionCodec#none()}
+ * @param indexIntervalRecords records between two entries of the sparse seek index
+ * @param retention limits after which the oldest segments are evicted
+ * @param overflowHandler receives evicted segments before they are deleted
+ * @param preallocateBytes chunk size by which segment files grow ahead of the data; {@code 0} grows them with every append
+ */
+public record DiskQueueOptions(FlushPolicy flushPolicy, 
+								long segmentBytes, 
+								long checkpointIntervalMs,
+								ReadMode readMode,
+								CompressionCodec compression,
+								int indexIntervalRecords,
+								RetentionPolicy retention,
+								OverflowHandler overflowHandler,
+								long preallocateBytes) {
+	public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+	public static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 1_000L;
+	public static final int DEFAULT_INDEX_INTERVAL_RECORDS = 1024;
+
+	public DiskQueueOptions {
+		Objects.requireNonNull(flushPolicy, "flushPolicy");
+		Objects.requireNonNull(readMode, "readMode");
+		Objects.requireNonNull(compression, "compression");
+		Objects.requireNonNull(retention, "retention");
+		Objects.requireNonNull(overflowHandler, "overflowHandler");
+		if(segmentBytes <= 0) { throw new IllegalArgumentException("segmentBytes must be more than 0"); }
+		if(checkpointIntervalMs < 0) { throw new IllegalArgumentException("checkpointIntervalMs must be >= 0"); }
+		if(indexIntervalRecords <= 0) { throw new IllegalArgumentException("indexIntervalRecords must be more than 0"); }
+		if(preallocateBytes < 0) { throw new IllegalArgumentException("preallocateBytes must be >= 0"); }
+	}
+
+	/**
+	 * Options matching the original behavior: every append is flushed, nothing is compressed
+	 * and nothing is evicted.
+	 */
+	public static DiskQueueOptions defaults() {
+		return new DiskQueueOptions(FlushPolicy.always(), DEFAULT_SEGMENT_BYTES, DEFAULT_CHECKPOINT_INTERVAL_MS, 
+									ReadMode.CHANNEL, CompressionCodec.none(), DEFAULT_INDEX_INTERVAL_RECORDS,
+									RetentionPolicy.none(), OverflowHandler.drop(), 0L);
+	}
+
+	public DiskQueueOptions withFlushPolicy(FlushPolicy flushPolicy) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withSegmentBytes(long segmentBytes) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withCheckpointIntervalMs(long checkpointIntervalMs) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withReadMode(ReadMode readMode) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withCompression(CompressionCodec compression) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withIndexIntervalRecords(int indexIntervalRecords) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withRetention(RetentionPolicy retention) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withOverflowHandler(OverflowHandler overflowHandler) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+
+	public DiskQueueOptions withPreallocateBytes(long preallocateBytes) {
+		return new DiskQueueOptions(flushPolicy, segmentBytes, checkpointIntervalMs, readMode, compression, indexIntervalRecords, retention, overflowHandler, preallocateBytes);
+	}
+}
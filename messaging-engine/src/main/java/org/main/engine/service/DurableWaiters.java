@@ -0,0 +1,67 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Futures of written records waiting for the queue's durable position to pass them.
+ *
+ * <p>Shared by the {@link SpillWriter}s. Waiters are added in position order, because
+ * batches are written in sequence, so completing them is a walk from the head.
+ * Not thread-safe: the owning writer guards every call with its write lock.
+ */
+final class DurableWaiters {
+	private final DiskQueue queue;
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+	DurableWaiters(DiskQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+     * Registers a written record.
+     *
+     * @param endPos queue position after the record's batch
+     * @param future completed with the durable position once it reaches {@code endPos}
+     */
+	void add(long endPos, CompletableFuture<Long> future) {
+		waiters.add(new Waiter(endPos, future));
+	}
+
+	/**
+     * Completes every waiter covered by the queue's current durable position.
+     */
+	void completeDurable() {
+		long durablePos = queue.durablePosition();
+		while(!waiters.isEmpty() && waiters.peekFirst().endPos <= durablePos) {
+			waiters.pollFirst().future.complete(durablePos);
+		}
+	}
+
+	/**
+     * Flushes the queue and completes the waiters it made durable.
+     *
+     * @throws IOException if the flush fails
+     */
+	void flush() throws IOException {
+		queue.flush();
+		completeDurable();
+	}
+
+	/**
+     * Flushes for the waiting futures, if any; for background flushers, which have
+     * no caller to report a failure to.
+     */
+	void flushQuietly() {
+		if(waiters.isEmpty()) return;
+		try {
+			flush();
+		}catch(IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private record Waiter(long endPos, CompletableFuture<Long> future) {}
+}
@@ -1,28 +1,59 @@
 package org.main.engine.service;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.READ;
-import static java.nio.file.StandardOpenOption.WRITE;
-
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedByInterruptException;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 
 import org.main.engine.dto.DiskRecord;
 
 /**
  * File-based implementation of {@link DiskQueue}.
  *
- * <p>Records are stored sequentially in a single file using the format:
+ * <p>Records are stored sequentially using the format:
+ * <pre>
+ * [1 byte format (1)][4 bytes CRC32C of length + payload][4 bytes length][payload bytes]
+ * </pre>
+ *
+ * <p>With a {@link DiskQueueOptions#compression() compression codec} configured, a multi-record
+ * {@link #appendBuffers(List)} call is written as one compressed batch frame instead:
  * <pre>
- * [4 bytes length][UTF-8 payload]
+ * [1 byte format (2)][4 bytes CRC32C][4 bytes length][1 byte codec id][4 bytes record count]
+ * [4 bytes uncompressed size][compressed ([4 bytes length][payload bytes])*]
  * </pre>
+ * {@link #poll()} decompresses a batch once and hands out its records one by one. The batch
+ * is acknowledged as a whole: all but its last record report the batch start as
+ * {@link DiskRecord#nextPos()}. Batches that do not shrink are written as plain records.
+ * {@link #compressionStats()} reports the ratio and the CPU time spent in the codec.
+ *
+ * <p>Every record is checksummed, so a torn or corrupted write is detected instead of
+ * misframing the records after it. On open the unread tail is validated sequentially
+ * and the active segment is cut at the first bad record; this makes relaxed
+ * {@link FlushPolicy flush policies} safe against silent corruption.
+ *
+ * <p>Format byte {@code 0} is never written. With {@link DiskQueueOptions#preallocateBytes()}
+ * set, segment files grow ahead of the data in zero-filled chunks, so a flush after an
+ * append is a data-only {@code fdatasync} instead of a file size update. The zero padding
+ * marks the logical end of the data: recovery stops at the first header with format
+ * {@code 0} like at any other invalid record, and sealed segments are trimmed to their data.
+ *
+ * <p>The log is split into segment files of roughly {@link DiskQueueOptions#segmentBytes()}.
+ * The first segment uses the configured file name; later segments append their
+ * 20-digit base offset ({@code tasks.queue.00000000000067108864}). Positions handed out by
+ * the queue are logical offsets that keep growing across segments.
  *
  * <p>This implementation is:
  * <ul>
@@ -31,17 +62,113 @@ import org.main.engine.dto.DiskRecord;
  *   <li>FIFO ordered</li>
  * </ul>
  *
- * <p>Processed records are tracked using read and commit positions.
+ * <p>Processed records are tracked using read and commit positions. Once the commit
+ * position passes the end of a segment, the whole segment file is deleted, so disk
+ * usage is bounded by the unacknowledged backlog rather than the total traffic.
+ *
+ * <p>The commit position is checkpointed to {@code <file>.checkpoint} at most every
+ * {@link DiskQueueOptions#checkpointIntervalMs()}. After a crash the queue resumes
+ * reading at the last checkpoint (records acknowledged after it are delivered again)
+ * and truncates the log at the first torn or corrupt record. Recovery validates the records
+ * from the resume position, so it costs time proportional to the unacked tail.
+ *
+ * <p>The write end, the read position and the unread record count are kept in volatile
+ * fields, so {@link #isEmpty()}, {@link #size()} and {@link #byteSize()} are lock-free
+ * and never touch the file system.
+ *
+ * <p>Appends stage pooled direct length headers next to the callers' payload buffers and
+ * write them with one gathering write. Channel reads go through a reusable direct
+ * read-ahead buffer that usually serves many records per read call. In steady state
+ * neither path allocates beyond the payload copy handed back by {@link #poll()}.
+ *
+ * <p>Records are numbered: {@link DiskRecord#offset()} is the number of records appended
+ * before it. Every {@link DiskQueueOptions#indexIntervalRecords()}th record and the first
+ * record of each segment are noted with their position and append time in a sparse
+ * {@code <file>.index}. {@link #seek(long)} and {@link #seekToTime(Instant)} use it to
+ * move the read position with one binary search and a scan of at most one interval.
+ *
+ * <p>A {@link DiskQueueOptions#retention() retention policy} bounds the log when the
+ * drainers fall behind: before each append the oldest sealed segments are evicted while
+ * the log exceeds its byte, age or unread-record limit. Each evicted segment is passed
+ * to the {@link DiskQueueOptions#overflowHandler() overflow handler} and then deleted,
+ * and reading continues at the first remaining segment.
+ *
+ * <p>With {@link ReadMode#MMAP} records are returned as read-only views of a memory
+ * mapping of the unread region, without any read call or copy.
+ *
+ * <p>Writes are forced to disk according to the configured {@link FlushPolicy};
+ * {@link #durablePosition()} reports how far the log is known to be flushed.
  */
 public class FileDiskQueue implements DiskQueue{
+	private static final String SEGMENT_SUFFIX_FORMAT = "%020d";
+	private static final int MAX_RECORD_BYTES = 10_000_000;
+	private static final byte RECORD_FORMAT = 1;
+	private static final byte BATCH_FORMAT = 2;
+	// [1 byte codec id][4 bytes record count][4 bytes uncompressed size] after the record header
+	private static final int BATCH_HEADER_BYTES = 1 + Integer.BYTES + Integer.BYTES;
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+	private static final int CRC_OFFSET = 1;
+	private static final int LENGTH_OFFSET = CRC_OFFSET + Integer.BYTES;
+	static final int HEADER_BYTES = LENGTH_OFFSET + Integer.BYTES;
+	private static final int READ_AHEAD_BYTES = 64 * 1024;
+	
 	private final Path path;
 	private final ReentrantLock lock = new ReentrantLock(true);
+	private final FlushPolicy flushPolicy;
+	private final long segmentBytes;
+	private final long checkpointIntervalMs;
+	private final ReadMode readMode;
+	private final CompressionCodec compression;
+	private final int indexIntervalRecords;
+	private final RetentionPolicy retention;
+	private final OverflowHandler overflowHandler;
+	private final long preallocateBytes;
+	private final QueueCheckpoint checkpoint;
+	private OffsetIndex index;
 	
-	private FileChannel channel;
+	// Oldest first; the last segment is the active one receiving appends
+	private final LinkedList<LogSegment> segments = new LinkedList<>();
 	
-	private long readPos = 0L;
+	// Written under lock; volatile so that depth checks need neither the lock nor I/O
+	private volatile long readPos = 0L;
+	private volatile long writePos = 0L;
+	private volatile long readRecordOffset = 0L;
+	private volatile long nextRecordOffset = 0L;
+	private long nextIndexedOffset = 0L;
 	private long commitPos = 0L;
 	
+	private final CRC32C crc = new CRC32C(); // guarded by lock
+	
+	// Pooled write state, guarded by lock
+	private ByteBuffer[] headers = new ByteBuffer[0];
+	private ByteBuffer[] frames = new ByteBuffer[0];
+	private int[] payloadPositions = new int[0];
+	
+	// Reusable read-ahead window over [readAheadStart, readAheadStart + limit), guarded by lock
+	private ByteBuffer readAhead = ByteBuffer.allocateDirect(READ_AHEAD_BYTES).limit(0);
+	private long readAheadStart = 0L;
+	
+	// Decompressed batch at readPos whose records are being handed out, guarded by lock
+	private ByteBuffer pendingBatch;
+	private long pendingBatchEnd;
+	
+	// Compression counters, guarded by lock
+	private long batchesWritten;
+	private long batchRecordsWritten;
+	private long batchRawBytes;
+	private long batchCompressedBytes;
+	private long compressCpuNanos;
+	private long batchesRead;
+	private long decompressCpuNanos;
+	private long batchesSkipped;
+	
+	private volatile long durablePos = 0L;
+	private long unflushedRecords = 0L;
+	private long lastFlushNanos = System.nanoTime();
+	private long checkpointedPos = -1L;
+	private long lastCheckpointNanos = System.nanoTime();
+	
 	 /**
      * Creates or opens a file-backed queue at the given file name.
      *
@@ -49,50 +176,527 @@ public class FileDiskQueue implements DiskQueue{
      * @throws IOException if the file cannot be created or opened
      */
 	public FileDiskQueue(String fileName) throws IOException{
+		this(fileName, DiskQueueOptions.defaults());
+	}
+	
+	/**
+     * Creates or opens a file-backed queue with the given options.
+     *
+     * @param fileName queue file path
+     * @param options flush and storage options
+     * @throws IOException if the file cannot be created or opened
+     */
+	public FileDiskQueue(String fileName, DiskQueueOptions options) throws IOException{
 		this.path = Paths.get(fileName);
+		this.flushPolicy = options.flushPolicy();
+		this.segmentBytes = options.segmentBytes();
+		this.checkpointIntervalMs = options.checkpointIntervalMs();
+		this.readMode = options.readMode();
+		this.compression = options.compression();
+		this.indexIntervalRecords = options.indexIntervalRecords();
+		this.retention = options.retention();
+		this.overflowHandler = options.overflowHandler();
+		this.preallocateBytes = options.preallocateBytes();
+		this.checkpoint = new QueueCheckpoint(path);
 		open();
 	}
 	
+	/**
+     * Opens the existing segments and recovers the read position:
+     * <ul>
+     *   <li>resume at the checkpointed commit position (or the log start without one)</li>
+     *   <li>delete segments that were fully committed before the crash</li>
+     *   <li>truncate an incomplete record or preallocated padding at the end of the active segment</li>
+     *   <li>number the records from the closest index entry and drop stale entries</li>
+     * </ul>
+     *
+     * <p>A file in the unsegmented format of the first version is refused, since recovery
+     * would take its records for a corrupt log and truncate them; see {@link LegacyQueueFile}.
+     */
 	private void open() throws IOException{
-		if(!Files.exists(path)) {
-			Files.createFile(path);
+		if(LegacyQueueFile.isLegacy(path)) {
+			throw new IOException(path + " was written in the unsegmented format of an earlier version;"
+									+ " move it away with LegacyQueueFile.setAside and re-append its records, or delete it");
+		}
+		for(Path segmentPath: listSegmentFiles(path)) {
+			segments.add(LogSegment.open(segmentPath, baseOffsetOf(segmentPath), preallocateBytes));
+		}
+		if(segments.isEmpty()) {
+			segments.add(LogSegment.open(path, 0L, preallocateBytes));
+		}
+		
+		long resumePos = checkpoint.read().orElse(segments.getFirst().baseOffset());
+		resumePos = Math.max(resumePos, segments.getFirst().baseOffset());
+		resumePos = Math.min(resumePos, activeSegment().endOffset());
+		
+		while(segments.size() > 1 && segments.getFirst().endOffset() <= resumePos) {
+			segments.removeFirst().delete();
+		}
+		
+		index = OffsetIndex.open(path, segments.getFirst().baseOffset(), activeSegment().endOffset());
+		int floor = index.floorByPosition(resumePos);
+		if(floor >= 0) {
+			this.readRecordOffset = index.offset(floor) + countRecords(index.position(floor), resumePos);
+		}else {
+			index.clear(); // nothing to number from: restart at 0
+		}
+		
+		this.nextRecordOffset = readRecordOffset + scanUnread(resumePos);
+		index.truncateFrom(activeSegment().endOffset());
+		if(floor < 0 && nextRecordOffset > readRecordOffset) {
+			index.append(readRecordOffset, resumePos, 0L); // append time unknown
+		}
+		this.nextIndexedOffset = index.size() > 0 ? index.lastOffset() + indexIntervalRecords : nextRecordOffset;
+		
+		this.writePos = activeSegment().endOffset();
+		this.readPos = Math.min(resumePos, writePos);
+		this.commitPos = readPos;
+		this.checkpointedPos = readPos;
+		this.durablePos = activeSegment().endOffset();
+	}
+	
+	/**
+     * Validates the records from a known record boundary to the end of the log in one
+     * sequential pass, counting the unread records. Every segment from the resume
+     * position on is read, so restart cost follows the unacknowledged backlog, not only
+     * the active segment.
+     *
+     * <p>The active segment is cut at the first record that is incomplete, has an
+     * invalid header or fails its checksum. Sealed segments were forced before the
+     * roll, so a bad record there is left in place for {@link #poll()} to report.
+     *
+     * @return number of valid records from {@code fromPos} on
+     */
+	private long scanUnread(long fromPos) throws IOException {
+		long count = 0;
+		long pos = fromPos;
+		try {
+			for(LogSegment segment: segments) {
+				if(segment.endOffset() <= pos) continue;
+				pos = Math.max(pos, segment.baseOffset());
+				
+				while(pos < segment.endOffset()) {
+					if(fillReadAhead(segment, pos, HEADER_BYTES) < HEADER_BYTES) break;
+					
+					int len = recordLength(readAhead, (int) (pos - readAheadStart));
+					if(len < 0) break;
+					if(fillReadAhead(segment, pos, HEADER_BYTES + len) < HEADER_BYTES + len) break;
+					int idx = (int) (pos - readAheadStart);
+					if(!checksumMatches(readAhead, idx, len)) break;
+					
+					pos += HEADER_BYTES + len;
+					count += readAhead.get(idx) == BATCH_FORMAT ? readAhead.getInt(idx + HEADER_BYTES + 1) : 1;
+				}
+				
+				if(pos < segment.endOffset()) {
+					if(segment != activeSegment()) return count;
+					segment.truncate(pos);
+				}
+			}
+			return count;
+		}finally {
+			readAhead.limit(0); // may hold bytes that were just truncated
+		}
+	}
+	
+	/**
+     * Counts the records in {@code [fromPos, toPos)} by walking the frame headers.
+     * Checksums are not verified; these records were acknowledged already.
+     */
+	private long countRecords(long fromPos, long toPos) throws IOException {
+		long count = 0;
+		long pos = fromPos;
+		while(pos < toPos) {
+			LogSegment segment = segmentFor(pos);
+			if(segment == null || fillReadAhead(segment, pos, HEADER_BYTES) < HEADER_BYTES) break;
+			
+			int len = recordLength(readAhead, (int) (pos - readAheadStart));
+			if(len < 0) break;
+			if(readAhead.get((int) (pos - readAheadStart)) == BATCH_FORMAT) {
+				if(fillReadAhead(segment, pos, HEADER_BYTES + BATCH_HEADER_BYTES) < HEADER_BYTES + BATCH_HEADER_BYTES) break;
+				count += readAhead.getInt((int) (pos - readAheadStart) + HEADER_BYTES + 1);
+			}else {
+				count++;
+			}
+			pos += HEADER_BYTES + len;
 		}
+		return count;
+	}
+	
+	/**
+     * Returns the payload length from the record header at {@code idx},
+     * or {@code -1} if the header is not a valid record header.
+     */
+	private static int recordLength(ByteBuffer buf, int idx) {
+		byte format = buf.get(idx);
+		if(format != RECORD_FORMAT && format != BATCH_FORMAT) return -1;
 		
-		this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+		int len = buf.getInt(idx + LENGTH_OFFSET);
+		return len < 0 || len > MAX_RECORD_BYTES ? -1 : len;
 	}
 	
 	/**
-     * Appends a message to the end of the queue file.
+     * Checks the stored checksum of the record at {@code idx} against its length and payload.
+     */
+	private boolean checksumMatches(ByteBuffer buf, int idx, int len) {
+		int stored = buf.getInt(idx + CRC_OFFSET);
+		
+		int savedPos = buf.position();
+		int savedLimit = buf.limit();
+		buf.limit(idx + HEADER_BYTES + len).position(idx + LENGTH_OFFSET);
+		crc.reset();
+		crc.update(buf);
+		buf.limit(savedLimit).position(savedPos);
+		
+		return (int) crc.getValue() == stored;
+	}
+	
+	/**
+     * Appends a binary record to the end of the queue.
      *
-     * <p>The message is written as length-prefixed UTF-8 data
-     * and flushed to disk.
+     * <p>The record is written as length-prefixed data
+     * and flushed according to the flush policy.
      *
-     * @param msg message to append
+     * @param payload record bytes
+     * @return queue position right after the record
      * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the record is larger than the queue can read back
      */
 	@Override
-	public void append(String msg) throws IOException {
+	public long append(ByteBuffer payload) throws IOException {
+		checkRecordSize(payload);
 		lock.lock();
-		
 		try {
-			byte[] data = msg.getBytes(StandardCharsets.UTF_8);
-			
-			ByteBuffer len = ByteBuffer.allocate(Integer.BYTES);
-			len.putInt(data.length);
-			len.flip();
+			ensureFrameCapacity(1);
+			long total = stageFrame(0, RECORD_FORMAT, payload);
+			return writeFrames(1, 1, total);
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Appends all records with a single gathering write and at most one flush.
+     *
+     * <p>Payload buffers are written in place next to pooled direct length headers,
+     * so a payload is never copied in user space and a steady-state append does not
+     * allocate. If compression is enabled, two or more records are written as one
+     * compressed batch instead.
+     *
+     * @param payloads records to append, in order
+     * @return queue position right after the last record
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if a record is larger than the queue can read back;
+     *         nothing of the batch is written then
+     */
+	@Override
+	public long appendBuffers(List<ByteBuffer> payloads) throws IOException {
+		for(ByteBuffer payload: payloads) {
+			checkRecordSize(payload);
+		}
+		lock.lock();
+		try {
+			if(payloads.isEmpty()) return activeSegment().endOffset();
 			
-			ByteBuffer payload = ByteBuffer.wrap(data);
+			if(payloads.size() > 1 && compression != CompressionCodec.none()) {
+				ByteBuffer batch = compressBatch(payloads);
+				if(batch != null) {
+					ensureFrameCapacity(1);
+					long total = stageFrame(0, BATCH_FORMAT, batch);
+					return writeFrames(1, payloads.size(), total);
+				}
+			}
 			
-			channel.position(channel.size());
-			writeFully(len);
-			writeFully(payload);
+			ensureFrameCapacity(payloads.size());
+			long total = 0;
+			for(int i=0; i<payloads.size(); i++) {
+				total += stageFrame(i, RECORD_FORMAT, payloads.get(i));
+			}
+			return writeFrames(payloads.size(), payloads.size(), total);
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Builds the body of a compressed batch frame.
+     *
+     * @return the batch body, or {@code null} if the records should be written on their own
+     */
+	private ByteBuffer compressBatch(List<ByteBuffer> payloads) {
+		long rawBytes = 0;
+		for(ByteBuffer payload: payloads) {
+			rawBytes += Integer.BYTES + payload.remaining();
+		}
+		if(rawBytes > MAX_RECORD_BYTES) return null;
+		
+		ByteBuffer raw = ByteBuffer.allocate((int) rawBytes);
+		for(ByteBuffer payload: payloads) {
+			raw.putInt(payload.remaining()).put(payload.duplicate());
+		}
+		raw.flip();
+		
+		long start = cpuNanos();
+		ByteBuffer compressed = compression.compress(raw);
+		compressCpuNanos += cpuNanos() - start;
+		
+		long plainBytes = rawBytes + (long) payloads.size() * (HEADER_BYTES - Integer.BYTES);
+		if(HEADER_BYTES + BATCH_HEADER_BYTES + compressed.remaining() >= plainBytes
+				|| BATCH_HEADER_BYTES + compressed.remaining() > MAX_RECORD_BYTES) {
+			batchesSkipped++;
+			return null;
+		}
+		
+		batchesWritten++;
+		batchRecordsWritten += payloads.size();
+		batchRawBytes += rawBytes;
+		batchCompressedBytes += compressed.remaining();
+		
+		return ByteBuffer.allocate(BATCH_HEADER_BYTES + compressed.remaining())
+				.put(compression.id())
+				.putInt(payloads.size())
+				.putInt((int) rawBytes)
+				.put(compressed)
+				.flip();
+	}
+	
+	/**
+     * Rejects a record that recovery would take for a corrupt length and truncate.
+     */
+	private static void checkRecordSize(ByteBuffer payload) {
+		if(payload.remaining() > MAX_RECORD_BYTES) {
+			throw new IllegalArgumentException("record of " + payload.remaining() + " bytes exceeds the limit of " + MAX_RECORD_BYTES + " bytes");
+		}
+	}
+	
+	/**
+     * Puts the header and payload of frame {@code i} into the frame array.
+     * The checksum covers the length field and the payload.
+     *
+     * @return the number of bytes the frame takes on disk
+     */
+	private long stageFrame(int i, byte format, ByteBuffer payload) {
+		int len = payload.remaining();
+		ByteBuffer header = headers[i];
+		header.clear();
+		header.put(0, format);
+		header.putInt(LENGTH_OFFSET, len);
+		
+		int payloadPos = payload.position();
+		crc.reset();
+		crc.update(header.position(LENGTH_OFFSET));
+		crc.update(payload);
+		payload.position(payloadPos);
+		header.clear();
+		header.putInt(CRC_OFFSET, (int) crc.getValue());
+		
+		frames[2 * i] = header;
+		frames[2 * i + 1] = payload;
+		payloadPositions[i] = payloadPos;
+		return HEADER_BYTES + len;
+	}
+	
+	/**
+     * Writes the first {@code count} staged frames, holding {@code records} records,
+     * and restores the callers' buffers.
+     */
+	private long writeFrames(int count, int records, long total) throws IOException {
+		try {
+			LogSegment active = activeSegment();
+			if(active.size() > 0 && active.size() + total > segmentBytes) {
+				active = roll();
+			}
+			enforceRetentionLocked();
+			long startPos = active.endOffset();
+			long endPos = active.append(frames, 2 * count);
+			writePos = endPos;
+			long firstOffset = nextRecordOffset;
+			nextRecordOffset += records;
+			indexFrames(startPos, active.baseOffset(), firstOffset, count, records);
 			
-			channel.force(false);
+			unflushedRecords += records;
+			long sinceFlushMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastFlushNanos);
+			if(flushPolicy.shouldFlush(unflushedRecords, sinceFlushMs)) {
+				forceLocked(endPos);
+			}
+			return endPos;
+		}finally {
+			for(int i=0; i<count; i++) {
+				frames[2 * i + 1].position(payloadPositions[i]);
+				frames[2 * i + 1] = null; // do not retain caller buffers
+			}
+		}
+	}
+	
+	/**
+     * Adds index entries for the frames just written from {@code startPos} on:
+     * the first frame of a segment and the first frame at or past the next interval.
+     */
+	private void indexFrames(long startPos, long segmentBase, long firstOffset, int count, int records) throws IOException {
+		long pos = startPos;
+		long recordOffset = firstOffset;
+		int recordsPerFrame = count == 1 ? records : 1;
+		long now = System.currentTimeMillis();
+		
+		for(int i=0; i<count; i++) {
+			if(recordOffset >= nextIndexedOffset || pos == segmentBase) {
+				index.append(recordOffset, pos, now);
+				nextIndexedOffset = recordOffset + indexIntervalRecords;
+			}
+			pos += HEADER_BYTES + frames[2 * i].getInt(LENGTH_OFFSET);
+			recordOffset += recordsPerFrame;
+		}
+	}
+	
+	/**
+     * Evicts the oldest sealed segments while the log exceeds a {@link RetentionPolicy} limit.
+     * Runs before the caller's records are written, so a failing handler fails the append cleanly
+     * and leaves the segment in the queue.
+     */
+	private void enforceRetentionLocked() throws IOException {
+		if(!retention.isEnabled()) return;
+		
+		long now = System.currentTimeMillis();
+		while(segments.size() > 1) {
+			LogSegment oldest = segments.getFirst();
+			RetentionLimit limit = retention.exceeded(writePos - oldest.baseOffset(), oldest.lastAppendMillis(), size(), now);
+			if(limit == null) return;
+			evictOldestLocked(limit);
+		}
+	}
+	
+	/**
+     * Hands the oldest segment's file to the overflow handler, then removes the segment,
+     * moving the read and commit positions past it, and deletes what is left of the file.
+     *
+     * <p>The handler runs before anything changes. If it fails while the file is still in
+     * place, the segment is reopened and stays in the queue; if it moved the file before
+     * failing, the eviction is completed anyway.
+     */
+	private void evictOldestLocked(RetentionLimit limit) throws IOException {
+		LogSegment oldest = segments.getFirst();
+		long end = oldest.endOffset();
+		long unread = unreadBeforeLocked(end);
+		
+		oldest.close();
+		readAhead.limit(0);
+		try {
+			overflowHandler.onEviction(new SegmentEviction(oldest.path(), oldest.baseOffset(), end, unread, limit));
+		}catch(IOException | RuntimeException ex) {
+			if(Files.exists(oldest.path())) {
+				segments.set(0, LogSegment.open(oldest.path(), oldest.baseOffset(), preallocateBytes));
+			}else {
+				removeEvictedLocked(end, unread);
+			}
+			throw ex;
+		}
+		removeEvictedLocked(end, unread);
+		Files.deleteIfExists(oldest.path());
+	}
+	
+	/**
+     * Counts the unread records in front of {@code end}, the end of the oldest segment.
+     */
+	private long unreadBeforeLocked(long end) throws IOException {
+		if(readPos >= end) return 0;
+		
+		int entry = index.floorByPosition(end);
+		if(entry >= 0 && index.position(entry) == end) {
+			return index.offset(entry) - readRecordOffset;
+		}
+		return Math.min(countRecords(readPos, end), size()); // no entry for the next segment
+	}
+	
+	private void removeEvictedLocked(long end, long unread) throws IOException {
+		if(readPos < end) {
+			readRecordOffset += unread;
+			readPos = end;
+			pendingBatch = null;
+		}
+		commitPos = Math.max(commitPos, end);
+		
+		segments.removeFirst();
+		index.retainFrom(segments.getFirst().baseOffset());
+		checkpointLocked();
+	}
+	
+	/**
+     * Grows the pooled header buffers so that {@code count} records can be staged.
+     * All headers are slices of one direct buffer.
+     */
+	private void ensureFrameCapacity(int count) {
+		if(headers.length >= count) return;
+		
+		int capacity = Math.max(count, headers.length * 2);
+		ByteBuffer block = ByteBuffer.allocateDirect(capacity * HEADER_BYTES);
+		headers = new ByteBuffer[capacity];
+		for(int i=0; i<capacity; i++) {
+			headers[i] = block.slice(i * HEADER_BYTES, HEADER_BYTES);
+		}
+		frames = new ByteBuffer[capacity * 2];
+		payloadPositions = new int[capacity];
+	}
+	
+	/**
+     * Forces every written record to disk, regardless of the flush policy.
+     *
+     * @throws IOException if the flush fails
+     */
+	@Override
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			if(unflushedRecords == 0) return;
+			forceLocked(activeSegment().endOffset());
 		}finally {
 			lock.unlock();
 		}
 	}
 	
+	@Override
+	public long durablePosition() {
+		return durablePos;
+	}
+	
+	private void forceLocked(long endPos) throws IOException {
+		activeSegment().force();
+		unflushedRecords = 0;
+		lastFlushNanos = System.nanoTime();
+		durablePos = endPos;
+	}
+	
+	/**
+     * Starts a new active segment right after the current one.
+     * Unflushed data of the old segment is forced first, so only the
+     * active segment can ever hold unflushed records. Its preallocated
+     * padding is cut before the next segment exists, so sealed segments
+     * end exactly at their data.
+     */
+	private LogSegment roll() throws IOException {
+		LogSegment old = activeSegment();
+		if(unflushedRecords > 0) {
+			forceLocked(old.endOffset());
+		}
+		old.trim();
+		LogSegment next = LogSegment.open(segmentPath(path, old.endOffset()), old.endOffset(), preallocateBytes);
+		segments.add(next);
+		return next;
+	}
+	
+	private LogSegment activeSegment() {
+		return segments.getLast();
+	}
+	
+	private LogSegment segmentFor(long offset) {
+		LogSegment active = activeSegment();
+		if(active.contains(offset)) return active; // common case, without an iterator
+		
+		for(LogSegment segment: segments) {
+			if(segment.contains(offset)) return segment;
+		}
+		return null;
+	}
+	
 	/**
      * Reads the next record from disk starting at the current read position.
      *
@@ -106,46 +710,305 @@ public class FileDiskQueue implements DiskQueue{
 	public DiskRecord poll() throws IOException {
 		lock.lock();
 		try {
-			if(readPos >= channel.size()) { //end of file reached
-				return null;
-			}
-			
-			ByteBuffer lenBuf = ByteBuffer.allocate(Integer.BYTES);
-			int lenRead = readAtLeast(lenBuf, readPos);
-			if(lenRead < Integer.BYTES) return null; // incorrect data so return null
-			
-			lenBuf.flip();
-			int len = lenBuf.getInt();
-			
-			if(len < 0 || len > 10_000_000) {
-				throw new IOException("Corrupt queue: invalid record length " + len);
-			}
-			
-			long payloadPos = readPos + Integer.BYTES;
-			
-			ByteBuffer dataBuf = ByteBuffer.allocate(len);
-			int dataRead = readAtLeast(dataBuf, payloadPos);
-			if(dataRead < len) {
-				throw new IOException("Corrupt queue: incomplete payload");
+			return pollLocked();
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Reads up to {@code maxRecords} records, or fewer once {@code maxBytes} of payload
+     * have been collected, while holding the lock once.
+     *
+     * <p>Channel reads go through the read-ahead buffer, so a batch of small records
+     * typically costs a single read call. If a corrupt record is hit after some records
+     * were read, those are returned and the next call reports the error.
+     *
+     * @param maxRecords upper bound on the number of records returned
+     * @param maxBytes payload byte budget; the first record is returned even if larger
+     * @return the records read, in order; empty if no data is available
+     * @throws IOException if reading fails or the first record is invalid
+     */
+	@Override
+	public List<DiskRecord> pollBatch(int maxRecords, long maxBytes) throws IOException {
+		if(maxRecords <= 0) { throw new IllegalArgumentException("maxRecords must be more than 0"); }
+		
+		List<DiskRecord> batch = new ArrayList<>(Math.min(maxRecords, 64));
+		lock.lock();
+		try {
+			long bytes = 0;
+			while(batch.size() < maxRecords && bytes < maxBytes) {
+				DiskRecord rec;
+				try {
+					rec = pollLocked();
+				}catch(IOException ex) {
+					if(batch.isEmpty()) throw ex;
+					break; // readPos stays at the bad record; the next call reports it
+				}
+				if(rec == null) break;
+				
+				batch.add(rec);
+				bytes += rec.payload().remaining();
 			}
-			
-			dataBuf.flip();
-			byte[] data = new byte[len];
-			dataBuf.get(data);
-			
-			long nextPos = payloadPos + len;
-			readPos = nextPos;
-			
-			return new DiskRecord(nextPos, new String(data, StandardCharsets.UTF_8));
+			return batch;
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	private DiskRecord pollLocked() throws IOException {
+		DiskRecord rec = readNext();
+		if(rec != null) {
+			readRecordOffset++;
+		}
+		return rec;
+	}
+	
+	private DiskRecord readNext() throws IOException {
+		if(pendingBatch != null) {
+			return nextFromBatch();
+		}
+		
+		LogSegment segment = segmentFor(readPos);
+		if(segment == null) { //end of log reached
+			return null;
+		}
+		
+		if(readMode == ReadMode.MMAP) {
+			DiskRecord mapped = pollMapped(segment);
+			if(mapped != null) return mapped;
+		}
+		
+		if(fillReadAhead(segment, readPos, HEADER_BYTES) < HEADER_BYTES) {
+			return null; // incorrect data so return null
+		}
+		int len = checkedLength(readAhead, (int) (readPos - readAheadStart));
+		
+		if(fillReadAhead(segment, readPos, HEADER_BYTES + len) < HEADER_BYTES + len) {
+			throw new IOException("Corrupt queue: incomplete payload");
+		}
+		int headerIdx = (int) (readPos - readAheadStart);
+		if(!checksumMatches(readAhead, headerIdx, len)) {
+			throw new IOException("Corrupt queue: checksum mismatch at offset " + readPos);
+		}
+		if(readAhead.get(headerIdx) == BATCH_FORMAT) {
+			return openBatch(readAhead, headerIdx, len);
+		}
+		
+		// the record escapes to the caller, so this copy is the one allocation per poll
+		byte[] data = new byte[len];
+		readAhead.get(headerIdx + HEADER_BYTES, data, 0, len);
+		
+		long nextPos = readPos + HEADER_BYTES + len;
+		readPos = nextPos;
+		
+		return new DiskRecord(readRecordOffset, nextPos, ByteBuffer.wrap(data));
+	}
+	
+	/**
+     * Makes sure the read-ahead buffer holds {@code needed} bytes starting at {@code offset},
+     * refilling it from the segment with one read call if it does not.
+     *
+     * <p>The buffer is reused across polls and grows only for records larger than it.
+     *
+     * @return bytes available from {@code offset} (less than needed only at end of segment)
+     */
+	private int fillReadAhead(LogSegment segment, long offset, int needed) throws IOException {
+		long available = readAheadStart + readAhead.limit() - offset;
+		if(offset >= readAheadStart && available >= needed) {
+			return needed;
+		}
+		
+		if(readAhead.capacity() < needed) {
+			readAhead = ByteBuffer.allocateDirect(Math.max(needed, readAhead.capacity() * 2));
+		}
+		readAhead.clear();
+		int read = segment.read(readAhead, offset);
+		readAhead.flip();
+		readAheadStart = offset;
+		return Math.min(read, needed);
+	}
+	
+	/**
+     * Decodes the record at {@code readPos} straight from the segment mapping.
+     *
+     * @return the record, or {@code null} if it is not (fully) inside a mapping
+     */
+	private DiskRecord pollMapped(LogSegment segment) throws IOException {
+		ByteBuffer view = segment.mappedView(readPos);
+		if(view == null || view.remaining() < HEADER_BYTES) return null;
+		
+		int headerIdx = view.position();
+		int len = checkedLength(view, headerIdx);
+		if(view.remaining() < HEADER_BYTES + len) return null; // record extends past the mapped window
+		
+		if(!checksumMatches(view, headerIdx, len)) {
+			throw new IOException("Corrupt queue: checksum mismatch at offset " + readPos);
+		}
+		if(view.get(headerIdx) == BATCH_FORMAT) {
+			return openBatch(view, headerIdx, len);
+		}
+		view.position(headerIdx + HEADER_BYTES).limit(headerIdx + HEADER_BYTES + len);
+		
+		readPos += HEADER_BYTES + len;
+		return new DiskRecord(readRecordOffset, readPos, view.slice());
+	}
+	
+	/**
+     * Decompresses the batch frame at {@code readPos} and returns its first record.
+     * The remaining records are served from {@link #pendingBatch}.
+     */
+	private DiskRecord openBatch(ByteBuffer buf, int idx, int len) throws IOException {
+		int body = idx + HEADER_BYTES;
+		byte codecId = buf.get(body);
+		int rawBytes = buf.getInt(body + 1 + Integer.BYTES);
+		if(rawBytes < 0 || rawBytes > MAX_RECORD_BYTES) {
+			throw new IOException("Corrupt queue: invalid batch size " + rawBytes);
+		}
+		
+		CompressionCodec codec = codecId == compression.id() ? compression : CompressionCodec.builtIn(codecId);
+		if(codec == null) {
+			throw new IOException("Corrupt queue: unknown compression codec " + codecId);
+		}
+		
+		long start = cpuNanos();
+		byte[] raw = codec.decompress(buf.slice(body + BATCH_HEADER_BYTES, len - BATCH_HEADER_BYTES), rawBytes);
+		decompressCpuNanos += cpuNanos() - start;
+		batchesRead++;
+		
+		pendingBatch = ByteBuffer.wrap(raw);
+		pendingBatchEnd = readPos + HEADER_BYTES + len;
+		return nextFromBatch();
+	}
+	
+	/**
+     * Returns the next record of the pending batch. Only the last one moves
+     * {@code readPos} (and its {@code nextPos}) past the batch.
+     */
+	private DiskRecord nextFromBatch() throws IOException {
+		ByteBuffer batch = pendingBatch;
+		int len = batch.remaining() >= Integer.BYTES ? batch.getInt(batch.position()) : -1;
+		if(len < 0 || len > batch.remaining() - Integer.BYTES) {
+			throw new IOException("Corrupt queue: invalid record length " + len + " in batch at offset " + readPos);
+		}
+		
+		ByteBuffer payload = batch.slice(batch.position() + Integer.BYTES, len);
+		batch.position(batch.position() + Integer.BYTES + len);
+		if(batch.hasRemaining()) {
+			return new DiskRecord(readRecordOffset, readPos, payload);
+		}
+		
+		pendingBatch = null;
+		readPos = pendingBatchEnd;
+		return new DiskRecord(readRecordOffset, readPos, payload);
+	}
+	
+	/**
+     * Returns a snapshot of the batch compression counters.
+     */
+	public CompressionStats compressionStats() {
+		lock.lock();
+		try {
+			return new CompressionStats(batchesWritten, batchRecordsWritten, batchRawBytes, batchCompressedBytes,
+										compressCpuNanos, batchesRead, decompressCpuNanos, batchesSkipped);
 		}finally {
 			lock.unlock();
 		}
 	}
 	
+	private static long cpuNanos() {
+		return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+	
+	/**
+     * Returns the payload length from the record header at {@code idx}.
+     *
+     * @throws IOException if the header is not a valid record header
+     */
+	private static int checkedLength(ByteBuffer buf, int idx) throws IOException {
+		byte format = buf.get(idx);
+		if(format != RECORD_FORMAT && format != BATCH_FORMAT) {
+			throw new IOException("Corrupt queue: unknown record format " + format);
+		}
+		int len = buf.getInt(idx + LENGTH_OFFSET);
+		if(len < 0 || len > MAX_RECORD_BYTES) {
+			throw new IOException("Corrupt queue: invalid record length " + len);
+		}
+		return len;
+	}
+	
+	/**
+     * Moves the read position to the record with the given offset, so that the next
+     * {@link #poll()} returns it.
+     *
+     * <p>Seeking back replays records that are still on disk; an offset older than the
+     * oldest retained record moves to that record. Records skipped by seeking forward
+     * count as processed once a later record is acknowledged. An offset past the end
+     * moves to the end of the log.
+     *
+     * @param recordOffset offset of the record to read next
+     * @return the offset of the record that will be read next
+     * @throws IOException if reading fails while scanning to the record
+     */
+	public long seek(long recordOffset) throws IOException {
+		if(recordOffset < 0) { throw new IllegalArgumentException("recordOffset must be >= 0"); }
+		
+		lock.lock();
+		try {
+			int entry = Math.max(0, index.floorByOffset(recordOffset));
+			return seekLocked(entry, recordOffset);
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Moves the read position so that every record appended at or after the given
+     * time is read again.
+     *
+     * <p>Append times are kept only for indexed records, so up to
+     * {@link DiskQueueOptions#indexIntervalRecords()} older records may be read as well.
+     *
+     * @param time earliest append time to replay
+     * @return the offset of the record that will be read next
+     * @throws IOException if reading fails
+     * @see #seek(long)
+     */
+	public long seekToTime(Instant time) throws IOException {
+		lock.lock();
+		try {
+			int entry = Math.max(0, index.lowerByTime(time.toEpochMilli()));
+			return seekLocked(entry, index.size() > 0 ? index.offset(entry) : nextRecordOffset);
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Positions at index entry {@code entry} and reads forward to {@code target}.
+     */
+	private long seekLocked(int entry, long target) throws IOException {
+		pendingBatch = null;
+		if(index.size() == 0 || target >= nextRecordOffset) {
+			readPos = writePos;
+			readRecordOffset = nextRecordOffset;
+			return readRecordOffset;
+		}
+		
+		readPos = index.position(entry);
+		readRecordOffset = index.offset(entry);
+		while(readRecordOffset < target && pollLocked() != null) {
+			// skip
+		}
+		return readRecordOffset;
+	}
+	
 	/**
      * Acknowledges processing progress by advancing the commit position.
      *
-     * <p>Calling ack with an older position has no effect.
+     * <p>Calling ack with an older position has no effect. Segments that lie
+     * entirely before the new commit position are deleted, and the position is
+     * checkpointed if the checkpoint interval has elapsed.
      *
      * @param nextPos file position after the processed record
      * @throws IOException if acknowledgement fails
@@ -156,32 +1019,81 @@ public class FileDiskQueue implements DiskQueue{
 		try {
 			if(nextPos <= commitPos) return;
 			commitPos = nextPos;
+			
+			long sinceCheckpointMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastCheckpointNanos);
+			if(sinceCheckpointMs >= checkpointIntervalMs) {
+				checkpointLocked();
+			}
+			
+			// a stale checkpoint pointing into a deleted segment resumes at the oldest kept one;
+			// after a seek back, the segment being read is kept even if it was acked
+			while(segments.size() > 1 && segments.getFirst().endOffset() <= Math.min(commitPos, readPos)) {
+				segments.removeFirst().delete();
+			}
+			index.retainFrom(segments.getFirst().baseOffset());
 		}finally {
 			lock.unlock();
 		}
 	}
 	
 	/**
-     * Checks whether all data in the file has been read.
+     * Persists the current commit position, regardless of the checkpoint interval.
      *
-     * @return {@code true} if no unread records exist
-     * @throws IOException if the check fails
+     * @throws IOException if the checkpoint cannot be written
      */
-	@Override
-	public boolean isEmpty() throws IOException {
+	public void checkpoint() throws IOException {
 		lock.lock();
 		try {
-			return readPos >= channel.size();
-		} catch(ClosedByInterruptException ex) {
-			Thread.currentThread().interrupt();
-			return true;
-		} finally {
+			checkpointLocked();
+		}finally {
 			lock.unlock();
 		}
 	}
 	
+	private void checkpointLocked() throws IOException {
+		if(commitPos == checkpointedPos) return;
+		checkpoint.write(commitPos);
+		checkpointedPos = commitPos;
+		lastCheckpointNanos = System.nanoTime();
+	}
+	
 	/**
-     * Closes the file channel and deletes the underlying queue file.
+     * Checks whether all data in the log has been read.
+     *
+     * <p>Compares in-memory positions only; no lock is taken and no I/O is done.
+     *
+     * @return {@code true} if no unread records exist
+     */
+	@Override
+	public boolean isEmpty() {
+		return readPos >= writePos;
+	}
+	
+	/**
+     * Returns the number of records appended but not yet polled, without locking.
+     *
+     * @return unread record count
+     */
+	@Override
+	public long size() {
+		return Math.max(0L, nextRecordOffset - readRecordOffset);
+	}
+	
+	/**
+     * Returns the bytes of records appended but not yet polled, including their
+     * length headers, without locking.
+     *
+     * @return unread byte count
+     */
+	@Override
+	public long byteSize() {
+		return Math.max(0L, writePos - readPos);
+	}
+	
+	/**
+     * Closes the file channels and deletes all segment files, the index and the checkpoint.
+     *
+     * <p>Unflushed records are discarded together with the files.
      *
      * @throws IOException if closing or deletion fails
      */
@@ -189,26 +1101,86 @@ public class FileDiskQueue implements DiskQueue{
 	public void close() throws IOException {
 		lock.lock();
 		try {
-			if(channel!=null) channel.close();
-			Files.delete(path);
+			for(LogSegment segment: segments) {
+				segment.delete();
+			}
+			segments.clear();
+			pendingBatch = null;
+			index.delete();
+			checkpoint.delete();
 		}finally {
 			lock.unlock();
 		}
 	}
 	
-	private void writeFully(ByteBuffer buffer) throws IOException{
-		while(buffer.hasRemaining()) {
-			channel.write(buffer);
+	/**
+     * Closes the file channels but keeps every file, so the queue can be opened again.
+     *
+     * @throws IOException if closing fails
+     */
+	void release() throws IOException {
+		lock.lock();
+		try {
+			for(LogSegment segment: segments) {
+				segment.close();
+			}
+			segments.clear();
+			pendingBatch = null;
+			index.close();
+		}finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+     * Deletes every segment file belonging to the queue with the given file name, with its
+     * side files and an old-format file set aside by {@link LegacyQueueFile#setAside(String)}.
+     * Must not be called while a queue on these files is open.
+     *
+     * @param fileName queue file path as passed to the constructor
+     * @throws IOException if a file cannot be deleted
+     */
+	public static void deleteFiles(String fileName) throws IOException {
+		Path base = Paths.get(fileName);
+		for(Path segmentPath: listSegmentFiles(base)) {
+			Files.deleteIfExists(segmentPath);
 		}
+		OffsetIndex.deleteFiles(base);
+		new QueueCheckpoint(base).delete();
+		Files.deleteIfExists(LegacyQueueFile.asidePath(base));
+	}
+	
+	static Path segmentPath(Path base, long baseOffset) {
+		if(baseOffset == 0L) return base;
+		return base.resolveSibling(base.getFileName() + "." + String.format(SEGMENT_SUFFIX_FORMAT, baseOffset));
+	}
+	
+	private static long baseOffsetOf(Path segmentPath) {
+		String name = segmentPath.getFileName().toString();
+		int idx = name.lastIndexOf('.');
+		String suffix = idx >= 0 ? name.substring(idx + 1) : "";
+		return suffix.length() == 20 && suffix.chars().allMatch(Character::isDigit) ? Long.parseLong(suffix) : 0L;
 	}
 	
-	private int readAtLeast(ByteBuffer buffer, long position) throws IOException{
-		int total = 0;
-		while(buffer.hasRemaining()) {
-			int n = channel.read(buffer, position + total);
-			if(n == -1) break;
-			total += n;
+	/**
+     * Lists the existing segment files of a queue, ordered by base offset.
+     */
+	private static List<Path> listSegmentFiles(Path base) throws IOException {
+		List<Path> found = new ArrayList<>();
+		if(Files.exists(base)) {
+			found.add(base);
+		}
+		
+		Path dir = base.toAbsolutePath().getParent();
+		Pattern segmentName = Pattern.compile(Pattern.quote(base.getFileName().toString()) + "\\.\\d{20}");
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for(Path candidate: stream) {
+				if(segmentName.matcher(candidate.getFileName().toString()).matches()) {
+					found.add(candidate);
+				}
+			}
 		}
-		return total;
+		found.sort(Comparator.comparingLong(FileDiskQueue::baseOffsetOf));
+		return found;
 	}
 }
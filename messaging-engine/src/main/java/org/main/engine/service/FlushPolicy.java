@@ -0,0 +1,54 @@
+package org.main.engine.service;
+
+/**
+ * Decides when appended records are forced to disk.
+ *
+ * <p>A flush happens once {@code everyRecords} unflushed records have accumulated
+ * or once {@code everyMillis} have passed since the last flush, whichever comes first.
+ * A value of {@code 0} disables that trigger.
+ *
+ * <p>Records written but not yet flushed survive a process crash (they are in the
+ * page cache) but not a power loss.
+ */
+public record FlushPolicy(int everyRecords, long everyMillis) {
+
+	public FlushPolicy {
+		if(everyRecords < 0) { throw new IllegalArgumentException("everyRecords must be >= 0"); }
+		if(everyMillis < 0) { throw new IllegalArgumentException("everyMillis must be >= 0"); }
+		if(everyRecords == 0 && everyMillis == 0) {
+			throw new IllegalArgumentException("at least one flush trigger must be set");
+		}
+	}
+
+	/**
+	 * Flushes after every append (one fsync per append or batch).
+	 */
+	public static FlushPolicy always() {
+		return new FlushPolicy(1, 0L);
+	}
+
+	/**
+	 * Flushes once {@code records} unflushed records have accumulated.
+	 */
+	public static FlushPolicy everyRecords(int records) {
+		return new FlushPolicy(records, 0L);
+	}
+
+	/**
+	 * Flushes once {@code millis} have passed since the previous flush.
+	 */
+	public static FlushPolicy everyMillis(long millis) {
+		return new FlushPolicy(0, millis);
+	}
+
+	/**
+	 * @param unflushedRecords records written since the last flush
+	 * @param millisSinceFlush time elapsed since the last flush
+	 * @return {@code true} if the pending records should be forced now
+	 */
+	public boolean shouldFlush(long unflushedRecords, long millisSinceFlush) {
+		if(unflushedRecords <= 0) return false;
+		if(everyRecords > 0 && unflushedRecords >= everyRecords) return true;
+		return everyMillis > 0 && millisSinceFlush >= everyMillis;
+	}
+}
@@ -0,0 +1,212 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent appends into batched writes on a {@link DiskQueue}.
+ *
+ * <p>Every caller enqueues its message and then competes for the write lock.
+ * The thread that wins writes everything that is pending at that moment with
+ * one {@link DiskQueue#appendBuffers(List)} call (one write, at most one flush).
+ * Callers that arrive while a batch is being written simply join the next one,
+ * so under contention the number of fsyncs grows with the number of batches,
+ * not the number of messages.
+ *
+ * <p>{@link #append(ByteBuffer)} returns once the message has been written, in order.
+ * The returned future completes when the message is durable, i.e. once the
+ * queue's {@link DiskQueue#durablePosition()} has moved past it. A background task
+ * flushes the queue so futures never wait for the next append: at the policy's
+ * interval for time-based policies, and once appends have paused for a short
+ * idle period for record-count ones, whose tail would otherwise wait for
+ * records that may never come.
+ */
+public class GroupCommitWriter implements SpillWriter {
+	static final long IDLE_FLUSH_MS = 100;
+	
+	private final DiskQueue queue;
+	private final ConcurrentLinkedQueue<PendingAppend> pending = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private final DurableWaiters waiters; // guarded by writeLock
+
+	private final ScheduledExecutorService flusher;
+	// Record-count policies only flush a tail that has seen no append for this long
+	private final long idleNanos;
+	private volatile long lastWriteNanos = System.nanoTime();
+
+	/**
+     * Creates a writer whose flusher thread is named {@code spill-flusher} and starts the flusher.
+     *
+     * @see #start(DiskQueue, FlushPolicy, String)
+     */
+	public static GroupCommitWriter start(DiskQueue queue, FlushPolicy flushPolicy) {
+		return start(queue, flushPolicy, "spill-flusher");
+	}
+
+	/**
+     * Creates a writer for the given queue and starts its background flusher. The flush task
+     * is only scheduled once the writer is fully constructed.
+     *
+     * @param queue target queue
+     * @param flushPolicy the queue's flush policy; a time trigger sets the flusher's interval
+     * @param threadName name of the flusher thread
+     * @return the running writer
+     */
+	public static GroupCommitWriter start(DiskQueue queue, FlushPolicy flushPolicy, String threadName) {
+		GroupCommitWriter writer = new GroupCommitWriter(queue, flushPolicy, threadName);
+		long periodMs = flushPolicy.everyMillis() > 0 ? flushPolicy.everyMillis() : IDLE_FLUSH_MS;
+		writer.flusher.scheduleWithFixedDelay(writer::flushQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+		return writer;
+	}
+
+	private GroupCommitWriter(DiskQueue queue, FlushPolicy flushPolicy, String threadName) {
+		this.queue = queue;
+		this.waiters = new DurableWaiters(queue);
+
+		this.idleNanos = flushPolicy.everyMillis() > 0 ? 0L : TimeUnit.MILLISECONDS.toNanos(IDLE_FLUSH_MS);
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+     * Appends a UTF-8 encoded message.
+     *
+     * @see #append(ByteBuffer)
+     */
+	public CompletableFuture<Long> append(String msg) throws IOException {
+		return append(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+     * Appends a binary record, batching it with any concurrent appends.
+     *
+     * <p>Blocks until the record is written. The returned future completes
+     * with the durable queue position once the record has been flushed.
+     *
+     * @param payload record bytes; must not be modified until this method returns
+     * @return future completed when the record is durable
+     * @throws IOException if the batch containing this record failed to write
+     * @throws IllegalArgumentException if the queue rejected a record of that batch
+     */
+	@Override
+	public CompletableFuture<Long> append(ByteBuffer payload) throws IOException {
+		PendingAppend mine = new PendingAppend(payload);
+		pending.add(mine);
+
+		writeLock.lock();
+		try {
+			if(!mine.written) {
+				writePending();
+			}
+		}finally {
+			writeLock.unlock();
+		}
+
+		if(mine.error instanceof IOException io) {
+			throw io;
+		}
+		if(mine.error != null) {
+			throw (RuntimeException) mine.error;
+		}
+		return mine.durable;
+	}
+
+	/**
+     * Flushes the queue and completes every future waiting for durability.
+     *
+     * @throws IOException if the flush fails
+     */
+	@Override
+	public void flush() throws IOException {
+		writeLock.lock();
+		try {
+			waiters.flush();
+		}finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+     * Stops the background flusher and flushes what has been written so far.
+     * The underlying queue is left open.
+     *
+     * @throws IOException if the final flush fails
+     */
+	@Override
+	public void close() throws IOException {
+		flusher.shutdownNow();
+		flush();
+	}
+
+	/**
+     * Always {@code false} once {@link #append(ByteBuffer)} has returned, because
+     * the caller's own record is written before it returns.
+     */
+	@Override
+	public boolean hasStaged() {
+		return !pending.isEmpty();
+	}
+
+	private void writePending() {
+		List<PendingAppend> batch = new ArrayList<>();
+		List<ByteBuffer> payloads = new ArrayList<>();
+		PendingAppend next;
+		while((next = pending.poll()) != null) {
+			batch.add(next);
+			payloads.add(next.payload);
+		}
+
+		try {
+			long endPos = queue.appendBuffers(payloads);
+			lastWriteNanos = System.nanoTime();
+			for(PendingAppend p: batch) {
+				p.written = true;
+				waiters.add(endPos, p.durable);
+			}
+			waiters.completeDurable();
+		}catch(IOException | RuntimeException ex) {
+			// Fail the whole batch; its other callers would otherwise wait for it forever
+			for(PendingAppend p: batch) {
+				p.written = true;
+				p.error = ex;
+				p.durable.completeExceptionally(ex);
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		if(System.nanoTime() - lastWriteNanos < idleNanos) return; // appends still coming: the record trigger flushes
+		writeLock.lock();
+		try {
+			waiters.flushQuietly();
+		}finally {
+			writeLock.unlock();
+		}
+	}
+
+	private static final class PendingAppend {
+		final ByteBuffer payload;
+		final CompletableFuture<Long> durable = new CompletableFuture<>();
+
+		// Written under writeLock, read by the owner after acquiring it
+		boolean written;
+		Exception error; // an IOException or a RuntimeException
+
+		PendingAppend(ByteBuffer payload) {
+			this.payload = payload;
+		}
+	}
+}
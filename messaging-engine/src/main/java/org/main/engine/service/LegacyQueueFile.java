@@ -0,0 +1,118 @@
+package org.main.engine.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A queue file written by the first, unsegmented {@link FileDiskQueue}.
+ *
+ * <p>File format:
+ * <pre>
+ * [4 bytes length][payload]...
+ * </pre>
+ * There is no format byte, no checksum and no checkpoint; the commit position was only
+ * kept in memory, so every record in the file is unprocessed.
+ *
+ * <p>A {@link FileDiskQueue} refuses to open such a file rather than truncate it as a
+ * corrupt log. {@link #setAside(String)} moves it to {@code <file>.legacy}, so a current
+ * queue can be created in its place, and {@link #records()} reads it back for re-spooling.
+ */
+public final class LegacyQueueFile {
+	// The limit the old format was written and read with
+	private static final int MAX_RECORD_BYTES = 10_000_000;
+
+	private final Path path;
+
+	private LegacyQueueFile(Path path) {
+		this.path = path;
+	}
+
+	static Path asidePath(Path queuePath) {
+		return queuePath.resolveSibling(queuePath.getFileName() + ".legacy");
+	}
+
+	/**
+     * Checks whether a queue file is in the old format. Every current frame starts with a
+     * non-zero format byte and a preallocated one with zeros, while an old record starts
+     * with the high byte of its length, which is zero, and a non-zero length.
+     *
+     * @param queuePath the queue's base file
+     * @return {@code true} if the file exists, has no checkpoint and starts with an old record
+     * @throws IOException if the file cannot be read
+     */
+	static boolean isLegacy(Path queuePath) throws IOException {
+		if(!Files.exists(queuePath) || Files.exists(QueueCheckpoint.checkpointPath(queuePath))) return false;
+
+		try(FileChannel ch = FileChannel.open(queuePath, READ)) {
+			ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+			while(head.hasRemaining()) {
+				if(ch.read(head) < 0) return false;
+			}
+			int len = head.getInt(0);
+			return head.get(0) == 0 && len > 0 && len <= MAX_RECORD_BYTES;
+		}
+	}
+
+	/**
+     * Moves an old-format queue file out of the way of the current queue.
+     *
+     * <p>A file set aside by an earlier run whose re-spooling did not finish is returned
+     * as well, so its records are spooled again rather than lost.
+     *
+     * @param fileName the queue's base file path
+     * @return the set-aside file, or empty if there is none
+     * @throws IOException if the file cannot be checked or moved
+     */
+	public static Optional<LegacyQueueFile> setAside(String fileName) throws IOException {
+		Path base = Paths.get(fileName);
+		Path aside = asidePath(base);
+		if(Files.exists(aside)) return Optional.of(new LegacyQueueFile(aside));
+		if(!isLegacy(base)) return Optional.empty();
+
+		Files.move(base, aside, ATOMIC_MOVE);
+		LogSegment.forceParentDirectory(aside);
+		return Optional.of(new LegacyQueueFile(aside));
+	}
+
+	/**
+     * Reads every complete record. An incomplete last record, left by a crash during
+     * its write, is skipped as the old queue did.
+     *
+     * @return the records in file order
+     * @throws IOException if the file cannot be read or holds an invalid length
+     */
+	public List<ByteBuffer> records() throws IOException {
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+		List<ByteBuffer> records = new ArrayList<>();
+		while(data.remaining() >= Integer.BYTES) {
+			int len = data.getInt();
+			if(len < 0 || len > MAX_RECORD_BYTES) {
+				throw new IOException("Corrupt legacy queue " + path + ": invalid record length " + len);
+			}
+			if(data.remaining() < len) break;
+
+			records.add(data.slice().limit(len));
+			data.position(data.position() + len);
+		}
+		return records;
+	}
+
+	/**
+     * Deletes the set-aside file once its records are safely in the current queue.
+     *
+     * @throws IOException if deletion fails
+     */
+	public void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
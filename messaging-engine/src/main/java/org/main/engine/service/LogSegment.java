@@ -0,0 +1,244 @@
+package org.main.engine.service;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * One file of a segmented {@link FileDiskQueue}.
+ *
+ * <p>A segment holds the queue bytes in {@code [baseOffset, baseOffset + size)}.
+ * Records never span two segments. Segments are not thread-safe; the owning
+ * queue serializes access.
+ *
+ * <p>With preallocation the file grows ahead of the data in zero-filled chunks, so
+ * appends overwrite allocated blocks and a flush does not have to update the file
+ * size. {@link #size()} is the logical data end; reads never go past it, and the
+ * zero padding after it reads as an invalid record format on recovery.
+ */
+class LogSegment {
+	// Below this many unread bytes a fresh mapping costs more than plain reads
+	static final int MIN_MAP_BYTES = 64 * 1024;
+	private static final long MAX_MAP_BYTES = 256L * 1024 * 1024;
+	private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024);
+	
+	private final long baseOffset;
+	private final Path path;
+	private final FileChannel channel;
+	private final long preallocateBytes;
+	private long size;
+	private long allocated;
+	private long lastAppendMillis;
+	
+	private MappedByteBuffer readMap;
+	private long readMapStart;
+
+	private LogSegment(long baseOffset, Path path, FileChannel channel, long preallocateBytes) throws IOException {
+		this.baseOffset = baseOffset;
+		this.path = path;
+		this.channel = channel;
+		this.preallocateBytes = preallocateBytes;
+		this.size = channel.size();
+		this.allocated = size;
+		this.lastAppendMillis = Files.getLastModifiedTime(path).toMillis();
+	}
+
+	/**
+     * Opens the segment file without preallocation, creating it if it does not exist.
+     */
+	static LogSegment open(Path path, long baseOffset) throws IOException {
+		return open(path, baseOffset, 0L);
+	}
+
+	/**
+     * Opens the segment file, creating it if it does not exist.
+     *
+     * @param preallocateBytes chunk size by which the file grows ahead of the data; {@code 0} disables it
+     */
+	static LogSegment open(Path path, long baseOffset, long preallocateBytes) throws IOException {
+		boolean created = !Files.exists(path);
+		LogSegment segment = new LogSegment(baseOffset, path, FileChannel.open(path, CREATE, READ, WRITE), preallocateBytes);
+		if(created) {
+			forceParentDirectory(path); // the new directory entry must survive a crash like the data
+		}
+		return segment;
+	}
+
+	/**
+     * Forces the directory holding the given file, so that creating or renaming the
+     * file is durable. Platforms that cannot open a directory (Windows) skip this.
+     */
+	static void forceParentDirectory(Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(dir, READ);
+		}catch(IOException ex) {
+			return;
+		}
+		try(channel) {
+			channel.force(true);
+		}
+	}
+
+	long baseOffset() {
+		return baseOffset;
+	}
+
+	long endOffset() {
+		return baseOffset + size;
+	}
+
+	long size() {
+		return size;
+	}
+
+	Path path() {
+		return path;
+	}
+
+	FileChannel channel() {
+		return channel;
+	}
+
+	/**
+     * Wall-clock time of the last append, or the file's modification time
+     * if nothing was appended since it was opened.
+     */
+	long lastAppendMillis() {
+		return lastAppendMillis;
+	}
+
+	boolean contains(long offset) {
+		return offset >= baseOffset && offset < endOffset();
+	}
+
+	/**
+     * Writes the buffers at the end of the segment with a gathering write.
+     *
+     * @return queue offset right after the written bytes
+     */
+	long append(ByteBuffer[] buffers, int length) throws IOException {
+		channel.position(size);
+		long remaining = 0;
+		for(int i=0; i<length; i++) {
+			remaining += buffers[i].remaining();
+		}
+		if(preallocateBytes > 0 && size + remaining > allocated) {
+			preallocate(size + remaining);
+		}
+		while(remaining > 0) {
+			remaining -= channel.write(buffers, 0, length);
+		}
+		size = channel.position();
+		lastAppendMillis = System.currentTimeMillis();
+		return endOffset();
+	}
+
+	/**
+     * Grows the file with zeros to the next multiple of the preallocation chunk
+     * at or past {@code needed} and forces the new size, so later flushes of the
+     * allocated range only write data.
+     */
+	private void preallocate(long needed) throws IOException {
+		long target = (needed + preallocateBytes - 1) / preallocateBytes * preallocateBytes;
+		long pos = allocated;
+		while(pos < target) {
+			ByteBuffer zeros = ZEROS.duplicate();
+			zeros.limit((int) Math.min(zeros.capacity(), target - pos));
+			pos += channel.write(zeros, pos);
+		}
+		channel.force(true);
+		allocated = target;
+	}
+
+	/**
+     * Cuts the zero padding after the data, e.g. once the segment is sealed.
+     */
+	void trim() throws IOException {
+		if(allocated <= size) return;
+		channel.truncate(size);
+		channel.force(true);
+		allocated = size;
+	}
+
+	/**
+     * Reads into the buffer starting at the given queue offset.
+     * Never reads past the logical end, even into preallocated space.
+     *
+     * @return number of bytes read (less than requested only at end of data)
+     */
+	int read(ByteBuffer buffer, long offset) throws IOException {
+		long filePos = offset - baseOffset;
+		int savedLimit = buffer.limit();
+		if(buffer.remaining() > size - filePos) {
+			buffer.limit(buffer.position() + (int) Math.max(0, size - filePos));
+		}
+		int total = 0;
+		try {
+			while(buffer.hasRemaining()) {
+				int n = channel.read(buffer, filePos + total);
+				if(n == -1) break;
+				total += n;
+			}
+		}finally {
+			buffer.limit(savedLimit);
+		}
+		return total;
+	}
+
+	/**
+     * Returns a read-only view of the segment starting at the given queue offset,
+     * backed by a memory mapping of the unread region.
+     *
+     * <p>The current mapping is reused while it covers the offset. Otherwise a new
+     * window up to the end of the file is mapped, provided at least
+     * {@link #MIN_MAP_BYTES} are unread.
+     *
+     * @return a buffer positioned at the offset, or {@code null} if the caller should use {@link #read}
+     */
+	ByteBuffer mappedView(long offset) throws IOException {
+		long filePos = offset - baseOffset;
+		
+		if(readMap == null || filePos < readMapStart || filePos >= readMapStart + readMap.capacity()) {
+			long unread = size - filePos;
+			if(unread < MIN_MAP_BYTES) return null;
+			
+			readMap = channel.map(MapMode.READ_ONLY, filePos, Math.min(unread, MAX_MAP_BYTES));
+			readMapStart = filePos;
+		}
+		
+		return readMap.duplicate().position((int) (filePos - readMapStart));
+	}
+	
+	/**
+     * Cuts the segment at the given queue offset and forces the new length to disk.
+     */
+	void truncate(long offset) throws IOException {
+		channel.truncate(offset - baseOffset);
+		channel.force(true);
+		size = offset - baseOffset;
+		allocated = size;
+	}
+
+	void force() throws IOException {
+		channel.force(false);
+	}
+
+	void close() throws IOException {
+		channel.close();
+	}
+
+	void delete() throws IOException {
+		channel.close();
+		Files.deleteIfExists(path);
+	}
+}
@@ -0,0 +1,32 @@
+package org.main.engine.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec used when compression is disabled. {@link FileDiskQueue} never calls it.
+ */
+final class NoCompression implements CompressionCodec {
+	static final NoCompression INSTANCE = new NoCompression();
+
+	private NoCompression() {}
+
+	@Override
+	public byte id() {
+		return 0;
+	}
+
+	@Override
+	public ByteBuffer compress(ByteBuffer input) {
+		throw new UnsupportedOperationException("compression is disabled");
+	}
+
+	@Override
+	public byte[] decompress(ByteBuffer input, int uncompressedBytes) {
+		throw new UnsupportedOperationException("compression is disabled");
+	}
+
+	@Override
+	public String toString() {
+		return "none";
+	}
+}
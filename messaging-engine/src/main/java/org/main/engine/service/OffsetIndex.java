@@ -0,0 +1,229 @@
+package org.main.engine.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Sparse index of a {@link FileDiskQueue}, kept in {@code <file>.index}.
+ *
+ * <p>Each entry maps a record offset (the number of records appended before it)
+ * to the queue position of the frame holding it and its append time:
+ * <pre>
+ * [8 bytes record offset][8 bytes queue position][8 bytes epoch millis]
+ * </pre>
+ *
+ * <p>Entries are appended in offset order and kept in memory for binary search.
+ * The file is a hint: it is not forced, a torn last entry is ignored and the
+ * owning queue drops entries that point past the end of the log on open.
+ * Not thread-safe; the owning queue serializes access.
+ */
+class OffsetIndex {
+	private static final int ENTRY_BYTES = 3 * Long.BYTES;
+
+	private final Path path;
+	private final Path tmpPath;
+	private final ByteBuffer entryBuf = ByteBuffer.allocateDirect(ENTRY_BYTES);
+	private FileChannel channel;
+
+	// Live entries are [start, size)
+	private long[] offsets = new long[64];
+	private long[] positions = new long[64];
+	private long[] timestamps = new long[64];
+	private int start;
+	private int size;
+
+	private OffsetIndex(Path path) {
+		this.path = path;
+		this.tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+	}
+
+	static Path indexPath(Path queuePath) {
+		return queuePath.resolveSibling(queuePath.getFileName() + ".index");
+	}
+
+	/**
+     * Deletes the index files of the queue with the given path.
+     */
+	static void deleteFiles(Path queuePath) throws IOException {
+		Path path = indexPath(queuePath);
+		Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".tmp"));
+		Files.deleteIfExists(path);
+	}
+
+	/**
+     * Loads the entries that lie in {@code [minPosition, maxPosition)}, dropping
+     * out-of-order ones, and rewrites the file with just those entries.
+     */
+	static OffsetIndex open(Path queuePath, long minPosition, long maxPosition) throws IOException {
+		OffsetIndex index = new OffsetIndex(indexPath(queuePath));
+		if(Files.exists(index.path)) {
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(index.path));
+			while(buf.remaining() >= ENTRY_BYTES) {
+				long offset = buf.getLong();
+				long position = buf.getLong();
+				long timestamp = buf.getLong();
+				
+				if(position < minPosition || position >= maxPosition) continue;
+				if(index.size > 0 && (offset <= index.lastOffset() || position <= index.position(index.size() - 1))) continue;
+				index.add(offset, position, timestamp);
+			}
+		}
+		index.rewrite();
+		return index;
+	}
+
+	int size() {
+		return size - start;
+	}
+
+	long offset(int i) {
+		return offsets[start + i];
+	}
+
+	long position(int i) {
+		return positions[start + i];
+	}
+
+	long timestamp(int i) {
+		return timestamps[start + i];
+	}
+
+	long lastOffset() {
+		return size > start ? offsets[size - 1] : -1L;
+	}
+
+	/**
+     * Appends an entry to the file (without forcing it) and to memory.
+     */
+	void append(long offset, long position, long timestamp) throws IOException {
+		entryBuf.clear();
+		entryBuf.putLong(offset).putLong(position).putLong(timestamp).flip();
+		while(entryBuf.hasRemaining()) {
+			channel.write(entryBuf);
+		}
+		add(offset, position, timestamp);
+	}
+
+	/**
+     * @return index of the last entry with a record offset {@code <= offset}, or {@code -1}
+     */
+	int floorByOffset(long offset) {
+		return floor(offsets, offset);
+	}
+
+	/**
+     * @return index of the last entry appended strictly before {@code millis}, or {@code -1}
+     */
+	int lowerByTime(long millis) {
+		return floor(timestamps, millis - 1);
+	}
+
+	/**
+     * @return index of the last entry whose position is {@code <= position}, or {@code -1}
+     */
+	int floorByPosition(long position) {
+		return floor(positions, position);
+	}
+
+	/**
+     * Forgets entries before the given queue position, e.g. after their segment was deleted.
+     * The file keeps them until the next open.
+     */
+	void retainFrom(long position) {
+		while(start < size && positions[start] < position) {
+			start++;
+		}
+	}
+
+	/**
+     * Drops the entries at or after the given queue position, in memory and on disk.
+     */
+	void truncateFrom(long position) throws IOException {
+		int before = size;
+		while(size > start && positions[size - 1] >= position) {
+			size--;
+		}
+		if(size != before) {
+			rewrite();
+		}
+	}
+
+	/**
+     * Drops every entry, in memory and on disk.
+     */
+	void clear() throws IOException {
+		start = 0;
+		size = 0;
+		rewrite();
+	}
+
+	void close() throws IOException {
+		channel.close();
+	}
+
+	void delete() throws IOException {
+		channel.close();
+		Files.deleteIfExists(tmpPath);
+		Files.deleteIfExists(path);
+	}
+
+	private int floor(long[] keys, long key) {
+		int i = Arrays.binarySearch(keys, start, size, key);
+		if(i < 0) {
+			i = -i - 2; // insertion point - 1
+		}else {
+			while(i + 1 < size && keys[i + 1] == key) i++; // equal timestamps: take the last
+		}
+		return i < start ? -1 : i - start;
+	}
+
+	private void add(long offset, long position, long timestamp) {
+		if(size == offsets.length) {
+			int live = size - start;
+			int capacity = live * 2 > offsets.length ? offsets.length * 2 : offsets.length;
+			offsets = Arrays.copyOfRange(offsets, start, start + capacity);
+			positions = Arrays.copyOfRange(positions, start, start + capacity);
+			timestamps = Arrays.copyOfRange(timestamps, start, start + capacity);
+			start = 0;
+			size = live;
+		}
+		offsets[size] = offset;
+		positions[size] = position;
+		timestamps[size] = timestamp;
+		size++;
+	}
+
+	/**
+     * Replaces the file with the live entries and reopens it for appending.
+     */
+	private void rewrite() throws IOException {
+		if(channel != null) {
+			channel.close();
+		}
+		ByteBuffer buf = ByteBuffer.allocate(size() * ENTRY_BYTES);
+		for(int i=start; i<size; i++) {
+			buf.putLong(offsets[i]).putLong(positions[i]).putLong(timestamps[i]);
+		}
+		buf.flip();
+
+		try(FileChannel ch = FileChannel.open(tmpPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			while(buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			ch.force(true);
+		}
+		Files.move(tmpPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+		channel = FileChannel.open(path, WRITE, APPEND);
+	}
+}
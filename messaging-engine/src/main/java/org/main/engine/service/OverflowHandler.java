@@ -0,0 +1,53 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Receives the segments a {@link FileDiskQueue} evicts under its {@link RetentionPolicy}.
+ *
+ * <p>The handler runs while the queue is locked, before the segment leaves the queue.
+ * It may move the file elsewhere to keep the records; whatever is left at
+ * {@link SegmentEviction#segmentPath()} afterwards is deleted. An exception fails the
+ * append that triggered the eviction, before its records are written, and cancels the
+ * eviction if the file is still in place: the segment stays queued and is offered again
+ * on a later append. A file the handler moved away before failing is evicted all the same.
+ */
+@FunctionalInterface
+public interface OverflowHandler {
+
+	void onEviction(SegmentEviction eviction) throws IOException;
+
+	/**
+	 * Discards evicted segments.
+	 */
+	static OverflowHandler drop() {
+		return eviction -> {};
+	}
+
+	/**
+	 * Moves evicted segment files into the given directory, keeping their names.
+	 * A file of the same name in the directory is replaced.
+	 *
+	 * @param directory target directory; created if missing
+	 */
+	static OverflowHandler moveTo(Path directory) {
+		return eviction -> {
+			Files.createDirectories(directory);
+			Path source = eviction.segmentPath();
+			Files.move(source, directory.resolve(source.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+		};
+	}
+
+	/**
+	 * Returns a handler that runs this handler and then {@code next}.
+	 */
+	default OverflowHandler andThen(OverflowHandler next) {
+		return eviction -> {
+			onEviction(eviction);
+			next.onEviction(eviction);
+		};
+	}
+}
@@ -0,0 +1,189 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A disk queue split into independent {@link FileDiskQueue} partitions.
+ *
+ * <p>Records are routed by the hash of their key, so all records with the same key
+ * land in the same partition and keep their FIFO order. Partitions share nothing:
+ * each has its own files, lock and positions, so appends and drains on different
+ * partitions run in parallel.
+ *
+ * <p>A single partition uses the configured file name as is. With more partitions,
+ * partition {@code i} uses {@code <file>.p<i>} ({@code tasks.queue.p3}).
+ *
+ * <p>The partition count is fixed for the lifetime of the files: opening files written
+ * with a different count fails, because records would no longer be routed to the
+ * partition holding their key's backlog.
+ */
+public class PartitionedDiskQueue {
+	private static final int UNPARTITIONED = -1;
+	
+	private final List<FileDiskQueue> partitions;
+
+	/**
+     * Creates or opens the partitions of a queue.
+     *
+     * @param fileName base file path
+     * @param partitionCount number of partitions
+     * @param options options applied to every partition
+     * @throws IOException if a partition cannot be opened or existing files use another partition count
+     */
+	public PartitionedDiskQueue(String fileName, int partitionCount, DiskQueueOptions options) throws IOException {
+		if(partitionCount <= 0) { throw new IllegalArgumentException("partitionCount must be more than 0"); }
+		checkPartitionCount(Paths.get(fileName), partitionCount);
+		
+		this.partitions = new ArrayList<>(partitionCount);
+		try {
+			for(int i=0; i<partitionCount; i++) {
+				partitions.add(new FileDiskQueue(partitionFileName(fileName, i, partitionCount), options));
+			}
+		}catch(IOException ex) {
+			for(FileDiskQueue opened: partitions) {
+				try {
+					opened.release();
+				}catch(IOException suppressed) {
+					ex.addSuppressed(suppressed);
+				}
+			}
+			throw ex;
+		}
+	}
+
+	static String partitionFileName(String fileName, int partition, int partitionCount) {
+		return partitionCount == 1 ? fileName : fileName + ".p" + partition;
+	}
+
+	public int partitionCount() {
+		return partitions.size();
+	}
+
+	/**
+     * Returns the partition that records with the given key are routed to.
+     */
+	public int partitionFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16); // spread the high bits, as HashMap does
+		return Math.floorMod(h, partitions.size());
+	}
+
+	public FileDiskQueue partition(int partition) {
+		return partitions.get(partition);
+	}
+
+	/**
+     * @return {@code true} if no partition has unread records; lock-free
+     */
+	public boolean isEmpty() {
+		for(FileDiskQueue partition: partitions) {
+			if(!partition.isEmpty()) return false;
+		}
+		return true;
+	}
+
+	/**
+     * @return unread records over all partitions; lock-free
+     */
+	public long size() {
+		long total = 0;
+		for(FileDiskQueue partition: partitions) {
+			total += partition.size();
+		}
+		return total;
+	}
+
+	/**
+     * @return unread bytes over all partitions; lock-free
+     */
+	public long byteSize() {
+		long total = 0;
+		for(FileDiskQueue partition: partitions) {
+			total += partition.byteSize();
+		}
+		return total;
+	}
+
+	/**
+     * Closes every partition, deleting its files.
+     *
+     * @throws IOException the first failure; the remaining partitions are still closed
+     */
+	public void close() throws IOException {
+		IOException failure = null;
+		for(FileDiskQueue partition: partitions) {
+			try {
+				partition.close();
+			}catch(IOException ex) {
+				if(failure == null) failure = ex; else failure.addSuppressed(ex);
+			}
+		}
+		if(failure != null) throw failure;
+	}
+
+	/**
+     * Deletes the files of the queue with the given base name, whatever its partition count.
+     * Must not be called while the queue is open.
+     *
+     * @param fileName base file path as passed to the constructor
+     * @throws IOException if a file cannot be deleted
+     */
+	public static void deleteFiles(String fileName) throws IOException {
+		FileDiskQueue.deleteFiles(fileName);
+		for(int partition: existingPartitions(Paths.get(fileName))) {
+			if(partition != UNPARTITIONED) {
+				FileDiskQueue.deleteFiles(fileName + ".p" + partition);
+			}
+		}
+	}
+
+	/**
+     * Every partition keeps an active segment file while its queue exists, so existing files
+     * must cover exactly the partitions {@code [0, partitionCount)}; fewer and more both fail.
+     */
+	private static void checkPartitionCount(Path base, int partitionCount) throws IOException {
+		Set<Integer> existing = existingPartitions(base);
+		Set<Integer> expected = new TreeSet<>();
+		if(partitionCount == 1) {
+			expected.add(UNPARTITIONED);
+		} else {
+			for(int p=0; p<partitionCount; p++) {
+				expected.add(p);
+			}
+		}
+		if(!existing.isEmpty() && !existing.equals(expected)) {
+			throw new IOException("Queue files for " + base + " were written with a different partition count;"
+									+ " drain or delete them before changing it");
+		}
+	}
+
+	/**
+     * Lists the partitions that have segment files next to the base file.
+     * Segments of an unpartitioned queue are reported as {@link #UNPARTITIONED}.
+     */
+	private static Set<Integer> existingPartitions(Path base) throws IOException {
+		String name = Pattern.quote(base.getFileName().toString());
+		Pattern segmentName = Pattern.compile(name + "(?:\\.p(\\d+))?(?:\\.\\d{20})?");
+		
+		Set<Integer> found = new TreeSet<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(base.toAbsolutePath().getParent())) {
+			for(Path candidate: stream) {
+				Matcher m = segmentName.matcher(candidate.getFileName().toString());
+				if(m.matches()) {
+					found.add(m.group(1) == null ? UNPARTITIONED : Integer.parseInt(m.group(1)));
+				}
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,91 @@
+package org.main.engine.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the commit position of a {@link FileDiskQueue} in a small side file.
+ *
+ * <p>File format:
+ * <pre>
+ * [1 byte version][8 bytes commit position][4 bytes CRC32 of the position]
+ * </pre>
+ *
+ * <p>Updates are atomic: the new content is written and forced to a temporary
+ * file, which then replaces the checkpoint with an atomic rename; the directory is
+ * forced after the rename. A reader therefore sees either the previous or the new
+ * checkpoint, never a mix.
+ */
+class QueueCheckpoint {
+	private static final byte VERSION = 1;
+	private static final int SIZE = 1 + Long.BYTES + Integer.BYTES;
+
+	private final Path path;
+	private final Path tmpPath;
+
+	QueueCheckpoint(Path queuePath) {
+		this.path = checkpointPath(queuePath);
+		this.tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+	}
+
+	static Path checkpointPath(Path queuePath) {
+		return queuePath.resolveSibling(queuePath.getFileName() + ".checkpoint");
+	}
+
+	/**
+     * Reads the last persisted commit position.
+     *
+     * @return the position, or empty if there is no valid checkpoint
+     */
+	OptionalLong read() throws IOException {
+		if(!Files.exists(path)) return OptionalLong.empty();
+
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+		if(buf.remaining() != SIZE || buf.get() != VERSION) return OptionalLong.empty();
+
+		long position = buf.getLong();
+		int crc = buf.getInt();
+		if(crc != crcOf(position)) return OptionalLong.empty();
+
+		return OptionalLong.of(position);
+	}
+
+	void write(long position) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SIZE);
+		buf.put(VERSION);
+		buf.putLong(position);
+		buf.putInt(crcOf(position));
+		buf.flip();
+
+		try(FileChannel ch = FileChannel.open(tmpPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			while(buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			ch.force(true);
+		}
+		Files.move(tmpPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+		LogSegment.forceParentDirectory(path); // otherwise the rename itself can be lost on a crash
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(tmpPath);
+		Files.deleteIfExists(path);
+	}
+
+	private static int crcOf(long position) {
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, position));
+		return (int) crc.getValue();
+	}
+}
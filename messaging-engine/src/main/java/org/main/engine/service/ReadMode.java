@@ -0,0 +1,19 @@
+package org.main.engine.service;
+
+/**
+ * How {@link FileDiskQueue} reads records back from its segment files.
+ */
+public enum ReadMode {
+	/**
+	 * Positional {@code FileChannel.read} calls for every record.
+	 */
+	CHANNEL,
+	
+	/**
+	 * Records are decoded straight from a read-only {@code MappedByteBuffer}
+	 * over the unread part of the segment. Small unread tails (a drainer that
+	 * keeps up with the producers) still use channel reads, so the mapping is
+	 * only rebuilt when there is a real backlog to recover.
+	 */
+	MMAP
+}
@@ -0,0 +1,21 @@
+package org.main.engine.service;
+
+/**
+ * The {@link RetentionPolicy} limit that caused a segment to be evicted.
+ */
+public enum RetentionLimit {
+	/**
+	 * The segment files together exceeded {@link RetentionPolicy#maxBytes()}.
+	 */
+	MAX_BYTES,
+	
+	/**
+	 * The last append to the segment is older than {@link RetentionPolicy#maxAgeMs()}.
+	 */
+	MAX_AGE,
+	
+	/**
+	 * More than {@link RetentionPolicy#maxRecords()} records were waiting to be read.
+	 */
+	MAX_RECORDS
+}
@@ -0,0 +1,69 @@
+package org.main.engine.service;
+
+/**
+ * Limits on how much a {@link FileDiskQueue} keeps before it evicts its oldest segments.
+ *
+ * <p>A value of {@code 0} disables that limit. Eviction works on whole sealed segments,
+ * so the active segment is never evicted and a limit can be exceeded by up to
+ * {@link DiskQueueOptions#segmentBytes()}. Evicted records are lost to the queue; the
+ * {@link OverflowHandler} decides whether their file is dropped or kept elsewhere.
+ *
+ * <p>Use {@link #none()} and the {@code with*} methods:
+ * <pre>
+ * RetentionPolicy.none().withMaxBytes(10L * 1024 * 1024 * 1024).withMaxAgeMs(TimeUnit.HOURS.toMillis(6))
+ * </pre>
+ *
+ * @param maxBytes maximum bytes of all segment files together
+ * @param maxAgeMs maximum time since the last append to a segment
+ * @param maxRecords maximum number of records appended but not yet polled
+ */
+public record RetentionPolicy(long maxBytes, long maxAgeMs, long maxRecords) {
+
+	public RetentionPolicy {
+		if(maxBytes < 0) { throw new IllegalArgumentException("maxBytes must be >= 0"); }
+		if(maxAgeMs < 0) { throw new IllegalArgumentException("maxAgeMs must be >= 0"); }
+		if(maxRecords < 0) { throw new IllegalArgumentException("maxRecords must be >= 0"); }
+	}
+
+	/**
+	 * Keeps everything until it is acknowledged.
+	 */
+	public static RetentionPolicy none() {
+		return new RetentionPolicy(0L, 0L, 0L);
+	}
+
+	public RetentionPolicy withMaxBytes(long maxBytes) {
+		return new RetentionPolicy(maxBytes, maxAgeMs, maxRecords);
+	}
+
+	public RetentionPolicy withMaxAgeMs(long maxAgeMs) {
+		return new RetentionPolicy(maxBytes, maxAgeMs, maxRecords);
+	}
+
+	public RetentionPolicy withMaxRecords(long maxRecords) {
+		return new RetentionPolicy(maxBytes, maxAgeMs, maxRecords);
+	}
+
+	/**
+	 * @return {@code true} if at least one limit is set
+	 */
+	public boolean isEnabled() {
+		return maxBytes > 0 || maxAgeMs > 0 || maxRecords > 0;
+	}
+
+	/**
+	 * Returns the first limit that is exceeded, checked in the order bytes, age, records.
+	 *
+	 * @param retainedBytes bytes of all segment files
+	 * @param oldestAppendMillis time of the last append to the oldest segment
+	 * @param unreadRecords records not yet polled
+	 * @param nowMillis current time
+	 * @return the exceeded limit, or {@code null} if the queue is within all limits
+	 */
+	public RetentionLimit exceeded(long retainedBytes, long oldestAppendMillis, long unreadRecords, long nowMillis) {
+		if(maxBytes > 0 && retainedBytes > maxBytes) return RetentionLimit.MAX_BYTES;
+		if(maxAgeMs > 0 && nowMillis - oldestAppendMillis > maxAgeMs) return RetentionLimit.MAX_AGE;
+		if(maxRecords > 0 && unreadRecords > maxRecords) return RetentionLimit.MAX_RECORDS;
+		return null;
+	}
+}
@@ -0,0 +1,21 @@
+package org.main.engine.service;
+
+import java.nio.file.Path;
+
+/**
+ * A segment that a {@link FileDiskQueue} evicts because of its {@link RetentionPolicy}.
+ *
+ * <p>The file is in the queue's record format and starts at queue position {@code baseOffset}.
+ *
+ * @param segmentPath the segment file; its channel is already closed
+ * @param baseOffset queue position of the first byte of the file
+ * @param endOffset queue position right after the last byte of the file
+ * @param unreadRecords records in the file that had not been polled yet
+ * @param limit the limit that triggered the eviction
+ */
+public record SegmentEviction(Path segmentPath, long baseOffset, long endOffset, long unreadRecords, RetentionLimit limit) {
+
+	public long bytes() {
+		return endOffset - baseOffset;
+	}
+}
@@ -0,0 +1,44 @@
+package org.main.engine.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes spilled tasks to a {@link DiskQueue} on behalf of producer threads.
+ *
+ * <p>Records from one producer reach the queue in the order they were appended.
+ * The returned futures complete with the queue's durable position once the
+ * record has been flushed, or exceptionally if it could not be written.
+ */
+public interface SpillWriter {
+	/**
+     * Hands a record over for writing.
+     *
+     * @param payload record bytes; must not be modified until the future completes
+     * @return future completed when the record is durable
+     * @throws IOException if the record is known to have failed before this method returns
+     */
+	CompletableFuture<Long> append(ByteBuffer payload) throws IOException;
+	
+	/**
+     * Returns whether records have been accepted but not yet written to the queue.
+     * Such records are not visible to {@link DiskQueue#isEmpty()} yet.
+     */
+	boolean hasStaged();
+	
+	/**
+     * Writes and flushes everything accepted so far and completes the pending futures.
+     *
+     * @throws IOException if the write or flush fails
+     */
+	void flush() throws IOException;
+	
+	/**
+     * Writes everything accepted so far, flushes it and stops background work.
+     * The underlying queue is left open.
+     *
+     * @throws IOException if the final write or flush fails
+     */
+	void close() throws IOException;
+}
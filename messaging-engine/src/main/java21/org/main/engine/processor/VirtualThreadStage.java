@@ -0,0 +1,23 @@
+package org.main.engine.processor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * {@link ExecutionStage} that starts a virtual thread per task.
+ *
+ * <p>There is no worker count and no waiting queue: every task that holds one of the
+ * (threads + queue capacity) permits runs at once, and a task blocked in
+ * {@code sleep} or I/O parks its virtual thread instead of a platform thread.
+ * Thousands of in-flight blocking tasks therefore need only a few carrier threads.
+ *
+ * <p>Compiled only by the {@code jdk21} Maven profile and loaded reflectively by
+ * {@link ExecutionStage#create}, so the default Java 17 build is unaffected.
+ */
+final class VirtualThreadStage extends PermitStage {
+	
+	VirtualThreadStage(int threads, int queueCapacity) {
+		super(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("virtual-task-", 0).factory()), 
+				threads, 
+				threads + queueCapacity);
+	}
+}
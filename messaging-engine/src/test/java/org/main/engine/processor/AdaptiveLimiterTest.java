@@ -0,0 +1,91 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveLimiterTest {
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private final AtomicLong clock = new AtomicLong();
+	private final List<AdaptiveLimiter.LimitChange> changes = new ArrayList<>();
+
+	@Test
+	void saturatedWindows_shouldGrowLimitByOne_upToMax() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(ConcurrencyLimitPolicy.between(1, 4).withWindowMs(100), 2, changes::add, clock::get);
+
+		for(int window=0; window<5; window++) {
+			runWindow(limiter, limiter.limit(), 10 * MS, false);
+		}
+
+		assertEquals(4, limiter.limit());
+		assertEquals(2, changes.size());
+		assertEquals(2, changes.get(0).from());
+		assertEquals(3, changes.get(0).to());
+		assertEquals("saturated", changes.get(0).reason());
+		assertTrue(changes.get(0).throughputPerSecond() > 0);
+	}
+
+	@Test
+	void latencySpike_orFailures_shouldBackOff_downToMin() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(ConcurrencyLimitPolicy.between(2, 20).withBackoffRatio(0.5), 16, changes::add, clock::get);
+
+		runWindow(limiter, 4, 10 * MS, false); // establishes the long-term latency, not saturated
+		assertTrue(changes.isEmpty());
+
+		runWindow(limiter, 4, 100 * MS, false);
+		assertEquals(8, limiter.limit());
+		assertEquals("latency", changes.get(0).reason());
+
+		runWindow(limiter, 1, 10 * MS, true);
+		assertEquals(4, limiter.limit());
+		assertEquals("failures", changes.get(1).reason());
+
+		runWindow(limiter, 1, 10 * MS, true);
+		runWindow(limiter, 1, 10 * MS, true);
+		assertEquals(2, limiter.limit());
+		assertEquals(3, changes.size(), "the limit must not go below minThreads");
+	}
+
+	@Test
+	void threadPoolStage_resize_shouldMoveCapacityWithThreads() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(2, 1);
+		assertEquals(3, stage.tryReserveUpTo(10));
+
+		stage.resize(1);
+		stage.release(1);
+		assertFalse(stage.tryReserve(), "shrunk capacity must be paid back before new reservations");
+		stage.release(2);
+		assertEquals(2, stage.tryReserveUpTo(10));
+
+		stage.resize(4);
+		assertEquals(3, stage.tryReserveUpTo(10));
+		stage.release(5);
+		assertTrue(stage.isIdle());
+
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+		
+		RingBufferStage ring = new RingBufferStage(1, 1, WaitStrategy.PARK);
+		assertThrows(UnsupportedOperationException.class, () -> ring.resize(2));
+		ring.shutdown();
+	}
+
+	private void runWindow(AdaptiveLimiter limiter, int concurrent, long latencyNanos, boolean failed) {
+		for(int i=0; i<concurrent; i++) {
+			limiter.onStart();
+		}
+		clock.addAndGet(1000 * MS);
+		for(int i=0; i<concurrent; i++) {
+			limiter.onComplete(latencyNanos, failed && i == 0);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class LaneSchedulerTest {
+
+	@Test
+	void tryReserve_shouldRespectLaneBudget_belowStageCapacity() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(2, 4);
+		LaneScheduler scheduler = new LaneScheduler(stage, List.of(PriorityLane.of("bulk", 1).withMemoryBudget(2), PriorityLane.of("urgent", 1)), 1, lane -> true);
+
+		assertTrue(scheduler.tryReserve(0));
+		assertTrue(scheduler.tryReserve(0));
+		assertFalse(scheduler.tryReserve(0), "bulk lane budget is used up");
+		assertTrue(scheduler.tryReserve(1), "other lanes keep the remaining capacity");
+
+		scheduler.release(0, 1);
+		assertTrue(scheduler.tryReserve(0));
+		scheduler.release(0, 2);
+		scheduler.release(1, 1);
+		assertTrue(stage.isIdle());
+
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void waitingDrainers_shouldShareReleasedCapacityByWeight() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(1, 5);
+		LaneScheduler scheduler = new LaneScheduler(stage, List.of(PriorityLane.of("high", 2), PriorityLane.of("low", 1), PriorityLane.of("filler", 1)), 1, 
+				lane -> lane != 2);
+		for(int i=0; i<6; i++) {
+			assertTrue(scheduler.tryReserve(2));
+		}
+
+		List<String> grants = new CopyOnWriteArrayList<>();
+		Thread high = drainer(scheduler, 0, "high", grants);
+		Thread low = drainer(scheduler, 1, "low", grants);
+		Thread.sleep(50);
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			for(int i=0; i<6; i++) {
+				scheduler.release(2, 1);
+				while(grants.size() < i + 1) {
+					Thread.sleep(5);
+				}
+			}
+		});
+		assertEquals(List.of("high", "high", "low", "high", "high", "low"), grants,
+				"turns must follow the weights even while a drainer is between reservations");
+
+		high.interrupt();
+		low.interrupt();
+		high.join();
+		low.join();
+		stage.shutdown();
+	}
+
+	@Test
+	void defaultLane_shouldReserveAWholeBatch_perWakeup() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(4, 104);
+		LaneScheduler scheduler = new LaneScheduler(stage, List.of(PriorityLane.DEFAULT), 256, lane -> true);
+
+		assertEquals(108, scheduler.reserve(0, 256, 1, TimeUnit.SECONDS), "a single lane shares with nobody");
+		scheduler.release(0, 108);
+		assertEquals(50, scheduler.reserve(0, 50, 1, TimeUnit.SECONDS));
+
+		scheduler.release(0, 50);
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void backloggedLanes_shouldTakeWeightTimesQuantum_perTurn() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(4, 196);
+		LaneScheduler scheduler = new LaneScheduler(stage, List.of(PriorityLane.of("high", 2), PriorityLane.of("low", 1)), 8, lane -> true);
+
+		assertEquals(16, scheduler.reserve(0, 100, 1, TimeUnit.SECONDS));
+		assertEquals(8, scheduler.reserve(1, 100, 1, TimeUnit.SECONDS));
+		assertEquals(16, scheduler.reserve(0, 100, 1, TimeUnit.SECONDS));
+
+		scheduler.release(0, 32);
+		scheduler.release(1, 8);
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	private static Thread drainer(LaneScheduler scheduler, int lane, String name, List<String> grants) {
+		Thread drainer = new Thread(() -> {
+			try {
+				while(true) {
+					int granted = scheduler.reserve(lane, 100, 5, TimeUnit.SECONDS);
+					for(int i=0; i<granted; i++) {
+						grants.add(name);
+					}
+				}
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}, "test-drainer-" + name);
+		drainer.start();
+		return drainer;
+	}
+}
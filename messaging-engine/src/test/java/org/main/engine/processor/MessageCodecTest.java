@@ -0,0 +1,40 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.main.engine.dto.Message;
+
+public class MessageCodecTest {
+
+	@Test
+	void encode_withLongestIdAndKey_shouldRoundTrip() {
+		String id = "i".repeat(MessageCodec.MAX_STRING_BYTES);
+		String key = "k".repeat(MessageCodec.MAX_STRING_BYTES);
+		Message message = Message.ofText(id, "payload").withKey(key);
+
+		Message decoded = MessageCodec.decode(MessageCodec.encode(message));
+
+		assertEquals(id, decoded.id());
+		assertEquals(key, decoded.key());
+		assertEquals("payload", decoded.payloadAsString());
+	}
+
+	@Test
+	void encode_withIdOverLengthPrefix_shouldFail_insteadOfTruncating() {
+		// 21846 chars of 3 UTF-8 bytes each = 65538 bytes
+		Message message = Message.ofText("€".repeat(21_846), "payload");
+
+		assertThrows(IllegalArgumentException.class, () -> MessageCodec.encode(message));
+	}
+
+	@Test
+	void encode_withKeyOverLengthPrefix_shouldFail() {
+		Message message = new Message("id", ByteBuffer.allocate(0), false, "k".repeat(MessageCodec.MAX_STRING_BYTES + 1));
+
+		assertThrows(IllegalArgumentException.class, () -> MessageCodec.encode(message));
+	}
+}
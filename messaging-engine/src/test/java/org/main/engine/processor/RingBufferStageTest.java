@@ -0,0 +1,99 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RingBufferStageTest {
+
+	@Test
+	void reservations_shouldBeBoundedByThreadsPlusQueueCapacity() throws Exception {
+		RingBufferStage stage = new RingBufferStage(2, 3, WaitStrategy.PARK);
+
+		assertEquals(4, stage.tryReserveUpTo(4));
+		assertTrue(stage.tryReserve());
+		assertFalse(stage.tryReserve());
+		assertFalse(stage.tryReserve(20, TimeUnit.MILLISECONDS));
+		assertFalse(stage.isIdle());
+
+		stage.release(2);
+		assertEquals(2, stage.tryReserveUpTo(10));
+		stage.release(5);
+		assertTrue(stage.isIdle());
+
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void concurrentProducers_shouldRunEveryTaskOnce_withEveryWaitStrategy() throws Exception {
+		for(WaitStrategy waitStrategy: WaitStrategy.values()) {
+			runProducers(waitStrategy);
+		}
+	}
+
+	private static void runProducers(WaitStrategy waitStrategy) throws Exception {
+		RingBufferStage stage = new RingBufferStage(3, 5, waitStrategy);
+		int producers = 4;
+		int perProducer = 2_000;
+		AtomicInteger ran = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+		Thread[] threads = new Thread[producers];
+		for(int p=0; p<producers; p++) {
+			threads[p] = new Thread(() -> {
+				for(int i=0; i<perProducer; i++) {
+					while(!stage.tryReserve()) {
+						Thread.onSpinWait();
+					}
+					stage.execute(() -> {
+						ran.incrementAndGet();
+						stage.release(1);
+						done.countDown();
+					});
+				}
+			});
+			threads[p].start();
+		}
+		for(Thread t: threads) t.join();
+
+		assertTrue(done.await(10, TimeUnit.SECONDS), waitStrategy.name());
+		assertEquals(producers * perProducer, ran.get());
+		assertTrue(stage.isIdle());
+
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+		assertThrows(RejectedExecutionException.class, () -> stage.execute(() -> {}));
+	}
+
+	@Test
+	void shutdown_shouldStillRunTasksAlreadyHandedOver() throws Exception {
+		RingBufferStage stage = new RingBufferStage(1, 4, WaitStrategy.PARK);
+		AtomicInteger ran = new AtomicInteger();
+
+		assertEquals(5, stage.tryReserveUpTo(5));
+		for(int i=0; i<5; i++) {
+			stage.execute(() -> {
+				try {
+					Thread.sleep(10);
+				}catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				ran.incrementAndGet();
+				stage.release(1);
+			});
+		}
+		stage.shutdown();
+
+		assertTrue(stage.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(5, ran.get());
+	}
+}
@@ -0,0 +1,80 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class ThreadPoolStageTest {
+
+	@Test
+	void tryReserveUpTo_shouldLeaveTheRestAvailable_toConcurrentReservations() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(2, 98);
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicBoolean missed = new AtomicBoolean();
+		CountDownLatch started = new CountDownLatch(1);
+		
+		// At most 20 of the 100 permits are ever taken, so a single reservation must never fail
+		Thread producer = new Thread(() -> {
+			started.countDown();
+			while(running.get()) {
+				if(!stage.tryReserve()) {
+					missed.set(true);
+				} else {
+					stage.release(1);
+				}
+			}
+		});
+		for(int i=0; i<9; i++) {
+			assertTrue(stage.tryReserve());
+		}
+		producer.start();
+		started.await();
+		
+		for(int i=0; i<100_000; i++) {
+			int granted = stage.tryReserveUpTo(10);
+			stage.release(granted);
+		}
+		running.set(false);
+		producer.join();
+		
+		assertFalse(missed.get(), "a batch reservation must not hide the free permits");
+		assertEquals(10, stage.tryReserveUpTo(10));
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void tryReserveUpTo_shouldNotOvertakeWaitingReservations() throws Exception {
+		ThreadPoolStage stage = new ThreadPoolStage(1, 1);
+		assertTrue(stage.tryReserve());
+		assertTrue(stage.tryReserve());
+		
+		AtomicBoolean waiterGranted = new AtomicBoolean();
+		Thread waiter = new Thread(() -> {
+			try {
+				waiterGranted.set(stage.tryReserve(5, TimeUnit.SECONDS));
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		while(waiter.getState() != Thread.State.TIMED_WAITING) {
+			Thread.sleep(1);
+		}
+		
+		stage.release(1);
+		assertEquals(0, stage.tryReserveUpTo(2), "the freed permit belongs to the waiting reservation");
+		waiter.join();
+		assertTrue(waiterGranted.get());
+		
+		stage.release(2);
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,60 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+	@Test
+	void tryAcquire_shouldAllowBurst_thenRefillAtRate() {
+		AtomicLong now = new AtomicLong(0L);
+		TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire(), "burst is used up");
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.nanosUntilAvailable());
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(0L, bucket.nanosUntilAvailable());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire(), "one interval refills one token");
+	}
+
+	@Test
+	void idleTime_shouldNotRefillBeyondBurst() {
+		AtomicLong now = new AtomicLong(0L);
+		TokenBucket bucket = new TokenBucket(10, 2, now::get);
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+	}
+	
+	@Test
+	void tryAcquireMany_shouldTakeWhatIsAvailable_andRefundShouldGiveItBack() {
+		AtomicLong now = new AtomicLong(0L);
+		TokenBucket bucket = new TokenBucket(10, 5, now::get);
+		
+		assertEquals(3, bucket.tryAcquire(3));
+		assertEquals(2, bucket.tryAcquire(4), "only the rest of the burst is left");
+		assertEquals(0, bucket.tryAcquire(1));
+		
+		bucket.refund(2);
+		assertEquals(2, bucket.tryAcquire(4));
+		assertEquals(0, bucket.tryAcquire(1));
+		
+		// Refunds after an idle period do not grow the bucket beyond its burst
+		now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+		bucket.refund(3);
+		assertEquals(5, bucket.tryAcquire(10));
+	}
+}
@@ -1,18 +1,37 @@
 package org.main.engine.processor;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.main.engine.dto.Message;
 import org.main.engine.events.EngineEvent;
 import org.main.engine.events.EngineEventType;
 import org.main.engine.listener.EngineEventPublisher;
+import org.main.engine.service.DiskQueueOptions;
+import org.main.engine.service.FileDiskQueue;
+import org.main.engine.service.PartitionedDiskQueue;
+import org.main.engine.service.RetentionPolicy;
 
 public class WorkerThreadPoolProcessorTest {
 	private WorkerThreadPoolProcessor engine;
@@ -77,4 +96,510 @@ public class WorkerThreadPoolProcessorTest {
         assertTrue(recovered >=1, "Expected at least one TASK_RECOVERED_FROM_DISK");
         
 	}
+	
+	@Test
+	void submitBinaryTask_shouldSpillAndRecoverWithoutDecoding() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 100L, publisher);
+		
+		engine.submitTask(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+		engine.submitTask(ByteBuffer.wrap(new byte[] {4, 5, 6}));
+		engine.submitTask(ByteBuffer.wrap(new byte[] {7, 8, 9}));
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream()
+					.filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 3) {
+				Thread.sleep(20);
+			}
+		});
+		
+		List<EngineEvent> recovered = events.stream()
+				.filter(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK)
+				.filter(e -> e.messageId().startsWith("bin-"))
+				.toList();
+		assertTrue(recovered.size() >= 1, "Expected at least one binary task recovered from disk");
+		assertTrue(recovered.stream().allMatch(e -> e.message().equals("[3 bytes]")));
+		
+		engine.shutdownGracefully();
+	}
+	
+	@Test
+	void asyncSpill_shouldSpillAndRecoverThroughWriterThread() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 50L, publisher,
+				EngineOptions.defaults().withSpillMode(SpillMode.ASYNC).withSpillBufferRecords(8));
+		
+		for(int i=0; i<6; i++) {
+			engine.submitTask("async-" + i);
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream()
+					.filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 6) {
+				Thread.sleep(20);
+			}
+		});
+		
+		long recovered = events.stream().filter(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK).count();
+		assertTrue(recovered >= 1, "Expected spilled tasks to be recovered from disk");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@ParameterizedTest
+	@EnumSource(value = StageType.class, names = {"RING_BUFFER", "FORK_JOIN"})
+	void alternativeStage_shouldSpillAndRecoverLikeThreadPool(StageType stageType) throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(2, 1, 50L, publisher,
+				EngineOptions.defaults().withStageType(stageType));
+		
+		for(int i=0; i<8; i++) {
+			engine.submitTask(stageType + "-" + i);
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream()
+					.filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 8) {
+				Thread.sleep(20);
+			}
+		});
+		
+		long recovered = events.stream().filter(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK).count();
+		assertTrue(recovered >= 1, "Expected spilled tasks to be recovered from disk");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void asyncHandler_shouldHoldCapacityUntilCompletion_notUntilWorkerReturns() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		List<CompletableFuture<Void>> pending = new CopyOnWriteArrayList<>();
+		MessageHandler handler = message -> {
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			pending.add(done);
+			return done;
+		};
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, handler, publisher, EngineOptions.defaults());
+		for(int i=0; i<4; i++) {
+			engine.submitTask("async-handler-" + i);
+		}
+		
+		// The single worker is free again, but both reservations stay taken until completion
+		Thread.sleep(300);
+		assertEquals(2, pending.size());
+		assertEquals(0, events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count());
+		
+		pending.get(0).completeExceptionally(new IllegalStateException("downstream unavailable"));
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 3) {
+				for(CompletableFuture<Void> done: pending) {
+					done.complete(null);
+				}
+				Thread.sleep(20);
+			}
+		});
+		
+		assertEquals(1, events.stream().filter(e -> e.type() == EngineEventType.TASK_FAILED_TO_EXECUTE).count());
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK),
+				"Expected tasks beyond capacity to be spilled and recovered");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void keyedTasks_shouldRunSeriallyPerKey_inSubmissionOrder_andInParallelAcrossKeys() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+		Map<String, List<Integer>> order = new ConcurrentHashMap<>();
+		AtomicInteger runningTotal = new AtomicInteger();
+		AtomicInteger peakTotal = new AtomicInteger();
+		AtomicBoolean overlap = new AtomicBoolean();
+		MessageHandler handler = message -> {
+			String[] parts = message.payloadAsString().split(":");
+			if(running.computeIfAbsent(message.key(), k -> new AtomicInteger()).incrementAndGet() > 1) {
+				overlap.set(true);
+			}
+			peakTotal.accumulateAndGet(runningTotal.incrementAndGet(), Math::max);
+			order.computeIfAbsent(message.key(), k -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(parts[1]));
+			Thread.sleep(20);
+			runningTotal.decrementAndGet();
+			running.get(message.key()).decrementAndGet();
+			return CompletableFuture.completedFuture(null);
+		};
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(4, 2, handler, publisher, EngineOptions.defaults());
+		for(int i=0; i<6; i++) {
+			for(int k=0; k<3; k++) {
+				engine.submitTask("key-" + k, "key-" + k + ":" + i);
+			}
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 18) {
+				Thread.sleep(20);
+			}
+		});
+		
+		assertFalse(overlap.get(), "Tasks with the same key must not run concurrently");
+		for(int k=0; k<3; k++) {
+			assertEquals(List.of(0, 1, 2, 3, 4, 5), order.get("key-" + k));
+		}
+		assertTrue(peakTotal.get() > 1, "Tasks with different keys should run in parallel");
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK),
+				"Expected keyed tasks to be spilled and recovered");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void urgentLane_shouldStayInMemory_whileBulkBacklogDrains() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		PriorityLane bulk = PriorityLane.of("bulk", 1).withMemoryBudget(2);
+		PriorityLane urgent = PriorityLane.of("urgent", 4);
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(2, 2, 30L, publisher,
+				EngineOptions.defaults().withPriorityLanes(List.of(bulk, urgent)));
+		try {
+			for(int i=0; i<20; i++) {
+				engine.submitTask(bulk, "bulk-b" + i);
+			}
+			for(int i=0; i<4; i++) {
+				engine.submitTask(urgent, "urgent-u" + i);
+				Thread.sleep(40);
+			}
+			
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				while(events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 24) {
+					Thread.sleep(20);
+				}
+			});
+			
+			assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_SPILLED_TO_DISK && e.messageId().startsWith("msg-b")),
+					"Expected the bulk lane to build a backlog");
+			assertFalse(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_SPILLED_TO_DISK && e.messageId().startsWith("msg-u")),
+					"Urgent tasks must not wait behind the bulk backlog");
+			
+			assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+		}finally {
+			PartitionedDiskQueue.deleteFiles("tasks-urgent.queue");
+		}
+	}
+	
+	@Test
+	void rejectPolicy_shouldRefuseTasksBeyondCapacity_withoutSpilling() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 200L, publisher,
+				EngineOptions.defaults().withAdmissionPolicy(AdmissionPolicy.reject()));
+		List<AdmissionResult> results = new CopyOnWriteArrayList<>();
+		for(int i=0; i<4; i++) {
+			results.add(engine.submitTask("reject-" + i));
+		}
+		
+		assertEquals(List.of(AdmissionResult.ACCEPTED, AdmissionResult.ACCEPTED, AdmissionResult.REJECTED, AdmissionResult.REJECTED), results);
+		assertEquals(2, events.stream().filter(e -> e.type() == EngineEventType.TASK_REJECTED).count());
+		assertFalse(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_SPILLED_TO_DISK));
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+		assertEquals(2, events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count());
+	}
+	
+	@Test
+	void dropOldestPolicy_shouldKeepNewestSpooledTasks() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 200L, publisher,
+				EngineOptions.defaults().withAdmissionPolicy(AdmissionPolicy.dropOldest(2)));
+		for(int i=0; i<6; i++) {
+			engine.submitTask("drop-d" + i);
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count() < 4) {
+				Thread.sleep(20);
+			}
+		});
+		
+		List<String> dropped = events.stream().filter(e -> e.type() == EngineEventType.TASK_DROPPED).map(EngineEvent::messageId).toList();
+		assertEquals(List.of("msg-d2", "msg-d3"), dropped);
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK && e.messageId().equals("msg-d5")));
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+		assertEquals(4, events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count());
+	}
+	
+	@Test
+	void blockPolicy_withRateLimit_shouldPaceProducer_andTimeOut() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		
+		WorkerThreadPoolProcessor paced = new WorkerThreadPoolProcessor(2, 10, 0L, publisher,
+				EngineOptions.defaults().withAdmissionPolicy(AdmissionPolicy.block(2_000).withRateLimit(20, 1)));
+		long start = System.nanoTime();
+		for(int i=0; i<5; i++) {
+			assertEquals(AdmissionResult.ACCEPTED, paced.submitTask("paced-" + i));
+		}
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		assertTrue(elapsedMs >= 150, "5 tasks at 20/s with burst 1 take at least 4 intervals, took " + elapsedMs + "ms");
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> paced.shutdownGracefully());
+		
+		WorkerThreadPoolProcessor starved = new WorkerThreadPoolProcessor(2, 10, 0L, publisher,
+				EngineOptions.defaults().withAdmissionPolicy(AdmissionPolicy.block(100).withRateLimit(0.5, 1)));
+		assertEquals(AdmissionResult.ACCEPTED, starved.submitTask("starved-0"));
+		assertEquals(AdmissionResult.TIMED_OUT, starved.submitTask("starved-1"));
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> starved.shutdownGracefully());
+	}
+	
+	@Test
+	void spillPolicy_withRateLimit_shouldPaceExecution_ofSpilledTasks() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<Long> starts = new CopyOnWriteArrayList<>();
+		publisher.addListener(ev -> {
+			if(ev.type() == EngineEventType.STARTED_TASK_PROCESSING) starts.add(System.nanoTime());
+		});
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(4, 10, 0L, publisher,
+				EngineOptions.defaults().withAdmissionPolicy(AdmissionPolicy.spill().withRateLimit(20, 1)));
+		for(int i=0; i<8; i++) {
+			engine.submitTask("spill-rate-" + i);
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(starts.size() < 8) {
+				Thread.sleep(10);
+			}
+		});
+		long elapsedMs = (starts.get(7) - starts.get(0)) / 1_000_000;
+		assertTrue(elapsedMs >= 300, "8 tasks at 20/s with burst 1 start over at least 7 intervals, took " + elapsedMs + "ms");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void runIdle_shouldBePublishedOnce_whenLastAdmittedTaskCompletes() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		// Tasks finish only once their run is fully submitted, so a run cannot go idle halfway
+		List<CompletableFuture<Void>> gates = List.of(new CompletableFuture<>(), new CompletableFuture<>());
+		MessageHandler handler = message -> gates.get(message.payloadAsString().charAt(5) - '0');
+		
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, handler, publisher, EngineOptions.defaults());
+		for(int run=0; run<2; run++) {
+			for(int i=0; i<5; i++) {
+				engine.submitTask("idle-" + run + i);
+			}
+			gates.get(run).complete(null);
+			int expectedIdle = run + 1;
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				while(events.stream().filter(e -> e.type() == EngineEventType.RUN_IDLE).count() < expectedIdle) {
+					Thread.sleep(10);
+				}
+			});
+			
+			// Nothing is published after the idle event of a run, and every task of it has completed
+			Thread.sleep(100);
+			EngineEvent last = events.get(events.size() - 1);
+			assertEquals(EngineEventType.RUN_IDLE, last.type());
+			assertEquals(5L * expectedIdle, events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count());
+		}
+		
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK),
+				"Expected the idle count to cover spooled tasks");
+		assertEquals(2, events.stream().filter(e -> e.type() == EngineEventType.RUN_IDLE).count());
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void runIdle_shouldStillBePublished_whenRetentionEvictsSpooledTasks() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		MessageHandler handler = message -> gate;
+		DiskQueueOptions diskOptions = DiskQueueOptions.defaults()
+				.withSegmentBytes(128)
+				.withRetention(RetentionPolicy.none().withMaxRecords(4));
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, handler, publisher,
+				EngineOptions.defaults().withDiskOptions(diskOptions));
+		for(int i=0; i<30; i++) {
+			engine.submitTask("evicted-" + i);
+		}
+		gate.complete(null);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().noneMatch(e -> e.type() == EngineEventType.RUN_IDLE)) {
+				Thread.sleep(10);
+			}
+		});
+		
+		long evicted = events.stream().filter(e -> e.type() == EngineEventType.SEGMENT_EVICTED_BY_RETENTION)
+				.mapToLong(e -> ((Number) e.meta().get("unreadRecords")).longValue()).sum();
+		long completed = events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count();
+		assertTrue(evicted > 0, "Expected retention to evict spooled tasks");
+		assertEquals(30, evicted + completed);
+		assertEquals(1, events.stream().filter(e -> e.type() == EngineEventType.RUN_IDLE).count());
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void runIdle_shouldStillBePublished_whenAsyncSpillWritesFail() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		// Every append that needs an eviction fails, so the writer thread loses whole batches
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		MessageHandler handler = message -> gate;
+		DiskQueueOptions diskOptions = DiskQueueOptions.defaults()
+				.withSegmentBytes(128)
+				.withRetention(RetentionPolicy.none().withMaxRecords(2))
+				.withOverflowHandler(eviction -> { throw new IOException("archive unavailable"); });
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, handler, publisher,
+				EngineOptions.defaults().withDiskOptions(diskOptions).withSpillMode(SpillMode.ASYNC));
+		for(int i=0; i<30; i++) {
+			engine.submitTask("lost-" + i);
+			Thread.sleep(10); // small batches, so segments roll and retention has sealed ones to evict
+		}
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().noneMatch(e -> e.type() == EngineEventType.TASK_DROPPED)) {
+				Thread.sleep(10);
+			}
+		});
+		gate.complete(null);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().noneMatch(e -> e.type() == EngineEventType.RUN_IDLE)) {
+				Thread.sleep(10);
+			}
+		});
+		
+		long lost = events.stream().filter(e -> e.type() == EngineEventType.TASK_DROPPED)
+				.filter(e -> "spillFailed".equals(e.meta().get("reason"))).count();
+		long evicted = events.stream().filter(e -> e.type() == EngineEventType.SEGMENT_EVICTED_BY_RETENTION)
+				.mapToLong(e -> ((Number) e.meta().get("unreadRecords")).longValue()).sum();
+		long completed = events.stream().filter(e -> e.type() == EngineEventType.TASK_COMPLETED).count();
+		assertTrue(lost > 0, "Expected failed spill batches");
+		assertEquals(30, lost + evicted + completed);
+		assertEquals(1, events.stream().filter(e -> e.type() == EngineEventType.RUN_IDLE).count());
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void failedDiskTasks_shouldBeAcknowledged_andNotReplayedAfterRestart() throws Exception {
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		MessageHandler failing = message -> gate.thenRun(() -> { throw new IllegalStateException("boom"); });
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, failing, publisher, EngineOptions.defaults());
+		for(int i=0; i<5; i++) {
+			engine.submitTask("failing-x" + i);
+		}
+		gate.complete(null);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().filter(e -> e.type() == EngineEventType.TASK_FAILED_TO_EXECUTE).count() < 5) {
+				Thread.sleep(10);
+			}
+		});
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_FAILED_TO_EXECUTE && "disk".equals(e.meta().get("source"))),
+				"Expected failing tasks recovered from disk");
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+		
+		EngineEventPublisher restartPublisher = new EngineEventPublisher();
+		List<EngineEvent> restartEvents = new CopyOnWriteArrayList<>();
+		restartPublisher.addListener(restartEvents::add);
+		WorkerThreadPoolProcessor restarted = new WorkerThreadPoolProcessor(1, 1, 0L, restartPublisher);
+		Thread.sleep(300);
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> restarted.shutdownGracefully());
+		
+		assertFalse(restartEvents.stream().anyMatch(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK
+				&& e.messageId().startsWith("msg-x")), "Failed tasks must not be replayed");
+	}
+	
+	@Test
+	void legacySpool_ofFirstVersion_shouldBeRespooledAndProcessed() throws Exception {
+		WorkerThreadPoolProcessor.deleteSpoolFiles();
+		ByteBuffer legacy = ByteBuffer.allocate(64);
+		for(String task: List.of("upgrade-u1", "upgrade-u2")) {
+			byte[] data = task.getBytes(StandardCharsets.UTF_8);
+			legacy.putInt(data.length).put(data);
+		}
+		legacy.flip();
+		try(FileChannel ch = FileChannel.open(Path.of("tasks.queue"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			ch.write(legacy);
+		}
+		
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 0L, publisher);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().noneMatch(e -> e.type() == EngineEventType.RUN_IDLE)) {
+				Thread.sleep(10);
+			}
+		});
+		List<String> recovered = events.stream().filter(e -> e.type() == EngineEventType.TASK_RECOVERED_FROM_DISK)
+				.map(EngineEvent::messageId).toList();
+		assertEquals(List.of("msg-u1", "msg-u2"), recovered);
+		assertEquals(List.of("upgrade-u1", "upgrade-u2"), events.stream()
+				.filter(e -> e.type() == EngineEventType.TASK_COMPLETED).map(EngineEvent::message).toList());
+		assertFalse(Files.exists(Path.of("tasks.queue.legacy")));
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
+	
+	@Test
+	void undecodableSpooledRecord_shouldBeDropped_withoutStoppingTheDrainer() throws Exception {
+		WorkerThreadPoolProcessor.deleteSpoolFiles();
+		FileDiskQueue spool = new FileDiskQueue("tasks.queue");
+		spool.append(ByteBuffer.wrap(new byte[] {0, (byte) 0xFF, (byte) 0xFF})); // id length past the record end
+		spool.append(MessageCodec.encode(Message.ofText("msg-after", "after-bad")));
+		
+		EngineEventPublisher publisher = new EngineEventPublisher();
+		List<EngineEvent> events = new CopyOnWriteArrayList<>();
+		publisher.addListener(events::add);
+		WorkerThreadPoolProcessor engine = new WorkerThreadPoolProcessor(1, 1, 0L, publisher);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			while(events.stream().noneMatch(e -> e.type() == EngineEventType.RUN_IDLE)) {
+				Thread.sleep(10);
+			}
+		});
+		assertEquals(1, events.stream().filter(e -> e.type() == EngineEventType.TASK_DROPPED)
+				.filter(e -> "undecodable".equals(e.meta().get("reason"))).count());
+		assertTrue(events.stream().anyMatch(e -> e.type() == EngineEventType.TASK_COMPLETED && e.messageId().equals("msg-after")),
+				"Expected the drainer to go on with the next record");
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> engine.shutdownGracefully());
+	}
 }
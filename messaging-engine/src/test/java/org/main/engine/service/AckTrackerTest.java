@@ -0,0 +1,78 @@
+package org.main.engine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.main.engine.dto.DiskRecord;
+
+public class AckTrackerTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void complete_outOfOrder_shouldOnlyCommitContiguousPrefix() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults().withCheckpointIntervalMs(0);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		AckTracker tracker = new AckTracker(crashed);
+
+		for(int i=0; i<4; i++) {
+			crashed.append("record-" + i);
+		}
+		List<DiskRecord> polled = crashed.pollBatch(4, Long.MAX_VALUE);
+		List<Long> tickets = new ArrayList<>();
+		for(DiskRecord rec: polled) {
+			tickets.add(tracker.track(rec));
+		}
+
+		tracker.complete(tickets.get(3));
+		tracker.complete(tickets.get(1));
+		assertEquals(-1, tracker.committedPosition());
+		assertEquals(4, tracker.inFlight());
+
+		tracker.complete(tickets.get(0));
+		assertEquals(polled.get(1).nextPos(), tracker.committedPosition());
+		assertEquals(2, tracker.inFlight());
+
+		// no close(): record-2 never finished, so it is delivered again
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		assertEquals("record-2", q.poll().message());
+		assertEquals("record-3", q.poll().message());
+		q.close();
+	}
+
+	@Test
+	void track_manyInFlight_shouldGrowAndKeepOrder() throws Exception {
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString());
+		AckTracker tracker = new AckTracker(q);
+
+		List<String> batch = new ArrayList<>();
+		for(int i=0; i<200; i++) {
+			batch.add("r" + i);
+		}
+		q.appendBatch(batch);
+
+		List<DiskRecord> polled = q.pollBatch(200, Long.MAX_VALUE);
+		List<Long> tickets = new ArrayList<>();
+		for(DiskRecord rec: polled) {
+			tickets.add(tracker.track(rec));
+		}
+
+		for(int i=199; i>=1; i--) {
+			tracker.complete(tickets.get(i));
+		}
+		assertEquals(-1, tracker.committedPosition());
+
+		tracker.complete(tickets.get(0));
+		assertEquals(polled.get(199).nextPos(), tracker.committedPosition());
+		assertEquals(0, tracker.inFlight());
+
+		q.close();
+	}
+}
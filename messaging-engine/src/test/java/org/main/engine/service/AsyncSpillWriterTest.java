@@ -0,0 +1,163 @@
+package org.main.engine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.main.engine.dto.DiskRecord;
+
+public class AsyncSpillWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void concurrentAppends_throughSmallRing_shouldKeepPerProducerOrder() throws Exception {
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString());
+		AsyncSpillWriter writer = AsyncSpillWriter.start(q, FlushPolicy.always(), 16);
+
+		int producers = 8;
+		int perProducer = 200;
+		CountDownLatch start = new CountDownLatch(1);
+		List<CompletableFuture<Long>> futures = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+
+		for(int p=0; p<producers; p++) {
+			int producer = p;
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					for(int i=0; i<perProducer; i++) {
+						futures.add(writer.append(utf8(producer + "-" + i)));
+					}
+				}catch(Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		start.countDown();
+		for(Thread t: threads) t.join();
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5),
+				() -> CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get());
+		assertFalse(writer.hasStaged());
+
+		Map<String, Integer> nextPerProducer = new HashMap<>();
+		DiskRecord rec;
+		int count = 0;
+		while((rec = q.poll()) != null) {
+			String[] parts = rec.message().split("-");
+			int expected = nextPerProducer.getOrDefault(parts[0], 0);
+			assertEquals(expected, Integer.parseInt(parts[1]), "order of producer " + parts[0]);
+			nextPerProducer.put(parts[0], expected + 1);
+			count++;
+		}
+		assertEquals(producers * perProducer, count);
+
+		writer.close();
+		q.close();
+	}
+
+	@Test
+	void timeBasedPolicy_shouldCompleteFutureWithoutFurtherAppends() throws Exception {
+		FlushPolicy policy = FlushPolicy.everyMillis(20);
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(policy));
+		AsyncSpillWriter writer = AsyncSpillWriter.start(q, policy, 64);
+
+		CompletableFuture<Long> durable = writer.append(utf8("A"));
+
+		long pos = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> durable.get());
+		assertEquals(q.durablePosition(), pos);
+
+		writer.close();
+		q.close();
+	}
+
+	@Test
+	void close_shouldWriteStagedRecords_andRejectNewOnes() throws Exception {
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(FlushPolicy.everyRecords(1000)));
+		AsyncSpillWriter writer = AsyncSpillWriter.start(q, FlushPolicy.everyRecords(1000), 64);
+
+		CompletableFuture<Long> first = writer.append(utf8("A"));
+		CompletableFuture<Long> second = writer.append(utf8("B"));
+		writer.close();
+
+		assertTrue(first.isDone() && second.isDone(), "close flushes what was staged");
+		assertThrows(IOException.class, () -> writer.append(utf8("C")));
+		assertEquals("A", q.poll().message());
+		assertEquals("B", q.poll().message());
+
+		q.close();
+	}
+
+	@Test
+	void close_whileProducersAppend_shouldWriteEveryAcceptedRecord() throws Exception {
+		for(int round=0; round<20; round++) {
+			FileDiskQueue q = new FileDiskQueue(tempDir.resolve("race-" + round + ".bin").toString());
+			AsyncSpillWriter writer = AsyncSpillWriter.start(q, FlushPolicy.always(), 4);
+			List<CompletableFuture<Long>> accepted = new CopyOnWriteArrayList<>();
+			List<Thread> threads = new CopyOnWriteArrayList<>();
+			for(int p=0; p<4; p++) {
+				Thread t = new Thread(() -> {
+					try {
+						while(true) {
+							accepted.add(writer.append(utf8("x")));
+						}
+					}catch(IOException closed) {
+						// expected once the writer is closed
+					}
+				});
+				threads.add(t);
+				t.start();
+			}
+			Thread.sleep(5);
+			writer.close();
+			for(Thread t: threads) t.join();
+
+			// Every append that returned a future must have been written and made durable
+			assertTrue(accepted.stream().allMatch(CompletableFuture::isDone));
+			assertEquals(accepted.size(), q.size());
+			q.close();
+		}
+	}
+
+	private static ByteBuffer utf8(String s) {
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void recordCountPolicy_shouldFlushTailOnceAppendsPause() throws Exception {
+		FlushPolicy policy = FlushPolicy.everyRecords(1000);
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(policy));
+		AsyncSpillWriter writer = AsyncSpillWriter.start(q, policy, 64);
+
+		CompletableFuture<Long> tail = writer.append(utf8("A"));
+
+		long pos = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> tail.get());
+		assertEquals(q.durablePosition(), pos);
+
+		writer.close();
+		q.close();
+	}
+}
@@ -7,10 +7,18 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -57,22 +65,669 @@ public class FileDiskQueueTest {
 	}
 	
 	@Test
-	void poll_withCorruptLength_shouldThrowIOException() throws Exception {
+	void poll_withCorruptRecordInSealedSegment_shouldThrowIOException() throws Exception {
 		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults().withSegmentBytes(16);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		crashed.append("record-1");
+		crashed.append("record-2");
 		
-		try(FileChannel ch = FileChannel.open(file, 
-				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
-			ByteBuffer len = ByteBuffer.allocate(4);
-			len.putInt(-1);
-			len.flip();
-			ch.write(len);
+		flipByte(file, FileDiskQueue.HEADER_BYTES + 2); // inside the payload of record-1
+		
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		
+		IOException ex = assertThrows(IOException.class, q::poll);
+		assertTrue(ex.getMessage().contains("checksum mismatch"));
+		
+		q.close();
+	}
+	
+	@Test
+	void reopen_withCorruptRecordInActiveSegment_shouldTruncateAtIt() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue crashed = new FileDiskQueue(file.toString());
+		crashed.append("A");
+		long second = crashed.append("B");
+		crashed.append("C");
+		
+		flipByte(file, second + FileDiskQueue.HEADER_BYTES); // payload of "C"
+		
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		assertEquals(second, Files.size(file));
+		assertEquals(2, q.size());
+		assertEquals("A", q.poll().message());
+		assertEquals("B", q.poll().message());
+		assertNull(q.poll());
+		
+		q.close();
+	}
+	
+	@Test
+	void appendBatch_shouldKeepOrder_andReturnEndPosition() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		
+		long end = q.appendBatch(List.of("A", "BB", "CCC"));
+		assertEquals(3 * FileDiskQueue.HEADER_BYTES + 6, end);
+		assertEquals(end, q.durablePosition());
+		
+		assertEquals("A", q.poll().message());
+		assertEquals("BB", q.poll().message());
+		assertEquals("CCC", q.poll().message());
+		assertNull(q.poll());
+		
+		q.close();
+	}
+	
+	@Test
+	void pollBatch_shouldRespectRecordAndByteLimits() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		
+		q.appendBatch(List.of("A", "BB", "CCC", "DDDD", "EEEEE"));
+		
+		List<DiskRecord> first = q.pollBatch(2, Long.MAX_VALUE);
+		assertEquals(List.of("A", "BB"), first.stream().map(DiskRecord::message).toList());
+		
+		// budget is reached after "CCC" + "DDDD"
+		List<DiskRecord> second = q.pollBatch(10, 5);
+		assertEquals(List.of("CCC", "DDDD"), second.stream().map(DiskRecord::message).toList());
+		
+		// the first record is returned even if it exceeds the budget
+		List<DiskRecord> third = q.pollBatch(10, 1);
+		assertEquals(List.of("EEEEE"), third.stream().map(DiskRecord::message).toList());
+		
+		assertTrue(q.pollBatch(10, Long.MAX_VALUE).isEmpty());
+		
+		q.ack(third.get(0).nextPos());
+		assertTrue(q.isEmpty());
+		
+		q.close();
+	}
+	
+	@Test
+	void append_withRecordCountPolicy_shouldFlushEveryNRecords() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(FlushPolicy.everyRecords(2)));
+		
+		long first = q.append("A");
+		assertEquals(0L, q.durablePosition());
+		
+		long second = q.append("B");
+		assertTrue(second > first);
+		assertEquals(second, q.durablePosition());
+		
+		long third = q.append("C");
+		assertEquals(second, q.durablePosition());
+		
+		q.flush();
+		assertEquals(third, q.durablePosition());
+		
+		q.close();
+	}
+	
+	@Test
+	void append_pastSegmentSize_shouldRollOver_andAckShouldDeleteOldSegments() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults().withSegmentBytes(16));
+		
+		// each record is header + 8 bytes, so every record gets its own segment
+		int recordBytes = FileDiskQueue.HEADER_BYTES + 8;
+		q.append("record-1");
+		q.append("record-2");
+		q.append("record-3");
+		
+		Path second = FileDiskQueue.segmentPath(file, recordBytes);
+		Path third = FileDiskQueue.segmentPath(file, 2 * recordBytes);
+		assertTrue(Files.exists(file));
+		assertTrue(Files.exists(second));
+		assertTrue(Files.exists(third));
+		
+		DiskRecord r1 = q.poll();
+		DiskRecord r2 = q.poll();
+		assertEquals("record-1", r1.message());
+		assertEquals("record-2", r2.message());
+		
+		q.ack(r2.nextPos());
+		assertTrue(Files.notExists(file));
+		assertTrue(Files.notExists(second));
+		assertTrue(Files.exists(third));
+		
+		assertEquals("record-3", q.poll().message());
+		assertTrue(q.isEmpty());
+		
+		q.close();
+		assertTrue(Files.notExists(third));
+	}
+	
+	@Test
+	void reopen_afterCrash_shouldResumeFromCheckpoint() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults().withCheckpointIntervalMs(0);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		
+		crashed.append("A");
+		crashed.append("B");
+		crashed.append("C");
+		crashed.ack(crashed.poll().nextPos());
+		crashed.poll(); // B read but never acked
+		
+		// no close(): simulate a crash and start over on the same files
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		assertEquals("B", q.poll().message());
+		assertEquals("C", q.poll().message());
+		assertNull(q.poll());
+		
+		q.close();
+		assertTrue(Files.notExists(file));
+	}
+	
+	@Test
+	void sizeAndByteSize_shouldTrackUnreadRecords_acrossSegmentsAndReopen() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults()
+				.withSegmentBytes(2 * (FileDiskQueue.HEADER_BYTES + 8))
+				.withCheckpointIntervalMs(0);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		assertEquals(0, crashed.size());
+		assertEquals(0, crashed.byteSize());
+		
+		for(int i=0; i<5; i++) {
+			crashed.append("record-" + i);
+		}
+		assertEquals(5, crashed.size());
+		assertEquals(5 * (FileDiskQueue.HEADER_BYTES + 8), crashed.byteSize());
+		
+		crashed.ack(crashed.poll().nextPos());
+		crashed.poll(); // read but never acked
+		assertEquals(3, crashed.size());
+		assertEquals(3 * (FileDiskQueue.HEADER_BYTES + 8), crashed.byteSize());
+		
+		// the unacked record is delivered again, so it counts as unread after a crash
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		assertEquals(4, q.size());
+		assertEquals(4 * (FileDiskQueue.HEADER_BYTES + 8), q.byteSize());
+		
+		while(q.poll() != null) {}
+		assertEquals(0, q.size());
+		assertEquals(0, q.byteSize());
+		assertTrue(q.isEmpty());
+		
+		q.close();
+	}
+	
+	@Test
+	void reopen_withTornTailRecord_shouldTruncateIt() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue crashed = new FileDiskQueue(file.toString());
+		long end = crashed.append("A");
+		
+		try(FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer torn = ByteBuffer.allocate(FileDiskQueue.HEADER_BYTES + 3);
+			torn.put((byte) 1).putInt(0);
+			torn.putInt(100); // claims 100 bytes, only 3 follow
+			torn.put(new byte[] {1, 2, 3});
+			torn.flip();
+			ch.write(torn);
+		}
+		
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		assertEquals(end, Files.size(file));
+		assertEquals("A", q.poll().message());
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+		
+		q.append("B");
+		assertEquals("B", q.poll().message());
+		
+		q.close();
+	}
+	
+	@Test
+	void poll_inMmapMode_shouldDrainLargeBacklogInOrder() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults()
+					.withReadMode(ReadMode.MMAP)
+					.withSegmentBytes(256 * 1024));
+		
+		for(int b=0; b<20; b++) {
+			List<String> batch = new ArrayList<>();
+			for(int i=0; i<1_000; i++) {
+				batch.add("message-" + (b * 1_000 + i));
+			}
+			q.appendBatch(batch);
 		}
 		
+		for(int i=0; i<20_000; i++) {
+			DiskRecord rec = q.poll();
+			assertNotNull(rec);
+			assertEquals("message-" + i, rec.message());
+		}
+		assertNull(q.poll());
+		
+		// small tail below the mapping threshold is read through the channel
+		q.append("tail");
+		assertEquals("tail", q.poll().message());
+		
+		q.close();
+	}
+	
+	@Test
+	void appendBinary_shouldReturnSameBytes() throws Exception {
+		Path file = tempDir.resolve("q.bin");
 		FileDiskQueue q = new FileDiskQueue(file.toString());
 		
-		IOException ex = assertThrows(IOException.class, q::poll);
-		assertTrue(ex.getMessage().contains("invalid record length"));
+		byte[] data = {0, 1, 2, (byte) 0xFF, 127};
+		ByteBuffer payload = ByteBuffer.wrap(data);
+		q.append(payload);
+		assertEquals(0, payload.position(), "caller buffer must not be consumed");
+		
+		DiskRecord rec = q.poll();
+		ByteBuffer read = rec.payload();
+		byte[] copy = new byte[read.remaining()];
+		read.get(copy);
+		assertEquals(ByteBuffer.wrap(data), ByteBuffer.wrap(copy));
+		
+		q.close();
+	}
+	
+	@Test
+	void append_overRecordLimit_shouldBeRejected_beforeAnythingIsWritten() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		ByteBuffer oversized = ByteBuffer.allocate(10_000_001);
 		
+		assertThrows(IllegalArgumentException.class, () -> q.append(oversized));
+		assertThrows(IllegalArgumentException.class, () -> q.appendBuffers(List.of(ByteBuffer.wrap(new byte[] {1}), oversized)));
+		assertEquals(0, q.size(), "a rejected batch must not be written in part");
+		
+		q.append("after");
+		q.release();
+		
+		// Reopening must neither see the rejected records nor truncate the valid one
+		FileDiskQueue reopened = new FileDiskQueue(file.toString());
+		assertEquals(1, reopened.size());
+		assertEquals("after", reopened.poll().message());
+		reopened.close();
+	}
+	
+	@Test
+	void open_onLegacyFormatFile_shouldRefuse_andSetAsideShouldRecoverItsRecords() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		// The first version's layout: [4 bytes length][payload], ending in a torn record
+		ByteBuffer legacy = ByteBuffer.allocate(64);
+		for(String msg: List.of("old-1", "old-2")) {
+			byte[] data = msg.getBytes(StandardCharsets.UTF_8);
+			legacy.putInt(data.length).put(data);
+		}
+		legacy.putInt(20).put((byte) 'x');
+		legacy.flip();
+		Files.write(file, Arrays.copyOf(legacy.array(), legacy.limit()));
+		long legacyBytes = Files.size(file);
+		
+		assertThrows(IOException.class, () -> new FileDiskQueue(file.toString()));
+		assertEquals(legacyBytes, Files.size(file), "a refused file must not be truncated");
+		
+		LegacyQueueFile aside = LegacyQueueFile.setAside(file.toString()).orElseThrow();
+		List<String> records = new ArrayList<>();
+		for(ByteBuffer record: aside.records()) {
+			records.add(StandardCharsets.UTF_8.decode(record).toString());
+		}
+		assertEquals(List.of("old-1", "old-2"), records);
+		
+		FileDiskQueue q = new FileDiskQueue(file.toString());
+		assertTrue(q.isEmpty());
+		assertTrue(LegacyQueueFile.setAside(file.toString()).isPresent(), "an unfinished recovery is offered again");
+		aside.delete();
+		assertTrue(LegacyQueueFile.setAside(file.toString()).isEmpty());
 		q.close();
 	}
+	
+	@Test
+	void appendBatch_withCompression_shouldRoundTrip_andAckBatchAsAWhole() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults()
+				.withCompression(CompressionCodec.deflate())
+				.withCheckpointIntervalMs(0);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		
+		List<String> batch = new ArrayList<>();
+		for(int i=0; i<100; i++) {
+			batch.add("{\"type\":\"order\",\"status\":\"NEW\",\"id\":" + i + "}");
+		}
+		long end = crashed.appendBatch(batch);
+		crashed.append("single");
+		
+		CompressionStats stats = crashed.compressionStats();
+		assertEquals(1, stats.batchesWritten());
+		assertEquals(100, stats.recordsWritten());
+		assertTrue(stats.ratio() > 3, "ratio " + stats.ratio());
+		assertTrue(end < stats.rawBytes());
+		assertEquals(101, crashed.size());
+		
+		DiskRecord first = crashed.poll();
+		assertEquals(batch.get(0), first.message());
+		assertEquals(0, first.nextPos()); // inside the batch: acking it commits nothing
+		crashed.ack(first.nextPos());
+		
+		// a crash before the batch is fully acked delivers the whole batch again
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		assertEquals(101, q.size());
+		
+		List<DiskRecord> all = q.pollBatch(1000, Long.MAX_VALUE);
+		assertEquals(101, all.size());
+		for(int i=0; i<100; i++) {
+			assertEquals(batch.get(i), all.get(i).message());
+		}
+		assertEquals(end, all.get(99).nextPos());
+		assertEquals("single", all.get(100).message());
+		assertTrue(q.isEmpty());
+		assertEquals(1, q.compressionStats().batchesRead());
+		
+		q.close();
+	}
+	
+	@Test
+	void appendBatch_withIncompressibleRecords_shouldWritePlainRecords() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults().withCompression(CompressionCodec.deflate()));
+		
+		Random random = new Random(42);
+		List<ByteBuffer> payloads = new ArrayList<>();
+		for(int i=0; i<4; i++) {
+			byte[] noise = new byte[64];
+			random.nextBytes(noise);
+			payloads.add(ByteBuffer.wrap(noise));
+		}
+		long end = q.appendBuffers(payloads);
+		
+		assertEquals(4 * (FileDiskQueue.HEADER_BYTES + 64), end);
+		assertEquals(1, q.compressionStats().batchesSkipped());
+		assertEquals(0, q.compressionStats().batchesWritten());
+		for(ByteBuffer expected: payloads) {
+			assertEquals(expected, q.poll().payload());
+		}
+		
+		q.close();
+	}
+	
+	@Test
+	void seek_shouldReplayFromAnyRetainedRecord_andSurviveReopen() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		DiskQueueOptions options = DiskQueueOptions.defaults()
+				.withIndexIntervalRecords(8)
+				.withCheckpointIntervalMs(0);
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		for(int i=0; i<50; i++) {
+			crashed.append("record-" + i);
+		}
+		
+		assertEquals(21, crashed.seek(21));
+		DiskRecord r21 = crashed.poll();
+		assertEquals("record-21", r21.message());
+		assertEquals(21, r21.offset());
+		assertEquals(28, crashed.size());
+		
+		assertEquals(0, crashed.seek(0));
+		assertEquals("record-0", crashed.poll().message());
+		
+		assertEquals(50, crashed.seek(1000));
+		assertTrue(crashed.isEmpty());
+		
+		crashed.seek(10);
+		crashed.ack(crashed.poll().nextPos());
+		
+		// no close(): numbering resumes from the index after a crash
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		DiskRecord r11 = q.poll();
+		assertEquals("record-11", r11.message());
+		assertEquals(11, r11.offset());
+		assertEquals(38, q.size());
+		
+		assertEquals(3, q.seek(3));
+		assertEquals("record-3", q.poll().message());
+		
+		q.append("record-50");
+		assertEquals(50, q.seek(50));
+		assertEquals("record-50", q.poll().message());
+		
+		q.close();
+		assertTrue(Files.notExists(OffsetIndex.indexPath(file)));
+	}
+	
+	@Test
+	void seekToTime_shouldReplayEverythingAppendedSince() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults().withIndexIntervalRecords(4));
+		
+		for(int i=0; i<8; i++) {
+			q.append("old-" + i);
+		}
+		Thread.sleep(20);
+		Instant since = Instant.now();
+		Thread.sleep(20);
+		for(int i=0; i<8; i++) {
+			q.append("new-" + i);
+		}
+		while(q.poll() != null) {}
+		
+		long landed = q.seekToTime(since);
+		assertTrue(landed <= 8 && landed >= 8 - 4, "landed at " + landed);
+		
+		List<String> replayed = new ArrayList<>();
+		DiskRecord rec;
+		while((rec = q.poll()) != null) {
+			replayed.add(rec.message());
+		}
+		assertEquals(16 - landed, replayed.size());
+		assertEquals("new-7", replayed.get(replayed.size() - 1));
+		assertTrue(replayed.contains("new-0"));
+		
+		q.close();
+	}
+	
+	@Test
+	void appendAndPoll_inSteadyState_shouldStayWithinAllocationBudget() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		FileDiskQueue q = new FileDiskQueue(file.toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(FlushPolicy.everyRecords(1_000_000)));
+		
+		com.sun.management.ThreadMXBean threads = 
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		int payloadBytes = 128;
+		ByteBuffer payload = ByteBuffer.allocateDirect(payloadBytes);
+		int ops = 20_000;
+		
+		// warm up pooled buffers and JIT
+		for(int i=0; i<ops; i++) q.append(payload);
+		for(int i=0; i<ops; i++) q.poll();
+		
+		long before = threads.getThreadAllocatedBytes(tid);
+		for(int i=0; i<ops; i++) q.append(payload);
+		long appendBytesPerOp = (threads.getThreadAllocatedBytes(tid) - before) / ops;
+		
+		before = threads.getThreadAllocatedBytes(tid);
+		for(int i=0; i<ops; i++) q.poll();
+		long pollBytesPerOp = (threads.getThreadAllocatedBytes(tid) - before) / ops;
+		
+		// same budgets as DiskQueueAllocationBenchmark
+		assertTrue(appendBytesPerOp <= 16, "append allocated " + appendBytesPerOp + " B/op");
+		assertTrue(pollBytesPerOp <= payloadBytes + 128, "poll allocated " + pollBytesPerOp + " B/op");
+		
+		q.close();
+	}
+	
+	@Test
+	void append_pastMaxBytes_shouldEvictOldestSegments_andKeepNumbering() throws Exception {
+		int frame = FileDiskQueue.HEADER_BYTES + 3;
+		List<SegmentEviction> evictions = new ArrayList<>();
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults()
+					.withSegmentBytes(2 * frame)
+					.withRetention(RetentionPolicy.none().withMaxBytes(4 * frame))
+					.withOverflowHandler(evictions::add));
+		
+		for(int i=0; i<10; i++) {
+			q.append(String.format("r%02d", i));
+		}
+		
+		assertTrue(evictions.size() >= 2);
+		assertTrue(evictions.stream().allMatch(e -> e.limit() == RetentionLimit.MAX_BYTES));
+		assertTrue(evictions.stream().noneMatch(e -> Files.exists(e.segmentPath())), "evicted files are deleted");
+		long evicted = evictions.stream().mapToLong(SegmentEviction::unreadRecords).sum();
+		assertEquals(10 - evicted, q.size());
+		assertTrue(q.byteSize() <= 6 * frame);
+		
+		DiskRecord rec;
+		long expected = evicted;
+		while((rec = q.poll()) != null) {
+			assertEquals(String.format("r%02d", expected), rec.message());
+			assertEquals(expected, rec.offset());
+			expected++;
+		}
+		assertEquals(10, expected);
+		q.close();
+	}
+	
+	@Test
+	void append_pastMaxRecords_shouldMoveSegmentsAway_andResumeAfterThemOnReopen() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		Path archive = tempDir.resolve("overflow");
+		int frame = FileDiskQueue.HEADER_BYTES + 3;
+		DiskQueueOptions options = DiskQueueOptions.defaults()
+				.withSegmentBytes(2 * frame)
+				.withRetention(RetentionPolicy.none().withMaxRecords(3))
+				.withOverflowHandler(OverflowHandler.moveTo(archive));
+		FileDiskQueue crashed = new FileDiskQueue(file.toString(), options);
+		
+		for(int i=0; i<8; i++) {
+			crashed.append(String.format("r%02d", i));
+		}
+		assertTrue(crashed.size() <= 3 + 2);
+		long firstKept = 8 - crashed.size();
+		
+		List<Path> moved;
+		try(var stream = Files.list(archive)) {
+			moved = stream.toList();
+		}
+		assertEquals(firstKept / 2, moved.size());
+		
+		// no close(): the eviction checkpoint makes the reopened queue skip the moved segments
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		assertEquals(String.format("r%02d", firstKept), q.poll().message());
+		q.close();
+	}
+	
+	@Test
+	void append_afterMaxAge_shouldEvictStaleSegment() throws Exception {
+		int frame = FileDiskQueue.HEADER_BYTES + 3;
+		List<SegmentEviction> evictions = new ArrayList<>();
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults()
+					.withSegmentBytes(2 * frame)
+					.withRetention(RetentionPolicy.none().withMaxAgeMs(50))
+					.withOverflowHandler(evictions::add));
+		
+		q.append("r00");
+		q.append("r01");
+		Thread.sleep(120);
+		q.append("r02"); // rolls, then finds the first segment stale
+		
+		assertEquals(1, evictions.size());
+		assertEquals(RetentionLimit.MAX_AGE, evictions.get(0).limit());
+		assertEquals(2, evictions.get(0).unreadRecords());
+		assertEquals("r02", q.poll().message());
+		assertNull(q.poll());
+		q.close();
+	}
+	
+	@Test
+	void append_whenOverflowHandlerFails_shouldKeepTheSegment_andEvictItOnceTheHandlerRecovers() throws Exception {
+		int frame = FileDiskQueue.HEADER_BYTES + 3;
+		List<SegmentEviction> evictions = new ArrayList<>();
+		boolean[] failing = { true };
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults()
+					.withSegmentBytes(2 * frame)
+					.withRetention(RetentionPolicy.none().withMaxRecords(3))
+					.withOverflowHandler(eviction -> {
+						if(failing[0]) throw new IOException("archive unavailable");
+						evictions.add(eviction);
+					}));
+		
+		int appended = 0;
+		IOException failure = null;
+		while(failure == null && appended < 10) {
+			try {
+				q.append(String.format("r%02d", appended));
+				appended++;
+			}catch(IOException ex) {
+				failure = ex;
+			}
+		}
+		assertNotNull(failure, "retention must have run the handler");
+		assertEquals(appended, q.size(), "the failed eviction keeps every record");
+		assertEquals("r00", q.poll().message(), "the kept segment is still readable");
+		
+		failing[0] = false;
+		for(int i=0; i<2; i++) { // the poll left room for one record before the limit is exceeded again
+			q.append(String.format("r%02d", appended));
+			appended++;
+		}
+		
+		assertEquals(1, evictions.size());
+		assertEquals(1, evictions.get(0).unreadRecords(), "the polled record is not counted");
+		assertTrue(evictions.stream().noneMatch(e -> Files.exists(e.segmentPath())));
+		DiskRecord rec;
+		long expected = 2;
+		while((rec = q.poll()) != null) {
+			assertEquals(String.format("r%02d", expected), rec.message());
+			expected++;
+		}
+		assertEquals(appended, expected);
+		q.close();
+	}
+	
+	@Test
+	void append_withPreallocation_shouldGrowInChunks_andRecoverLogicalEnd() throws Exception {
+		Path file = tempDir.resolve("q.bin");
+		int frame = FileDiskQueue.HEADER_BYTES + 3;
+		DiskQueueOptions options = DiskQueueOptions.defaults()
+				.withSegmentBytes(4 * frame)
+				.withPreallocateBytes(4096);
+		FileDiskQueue q = new FileDiskQueue(file.toString(), options);
+		
+		q.append("r00");
+		assertEquals(4096, Files.size(file), "file grows by a whole chunk");
+		assertEquals(frame, q.byteSize());
+		for(int i=1; i<6; i++) {
+			q.append(String.format("r%02d", i));
+		}
+		assertEquals(4 * frame, Files.size(file), "sealed segment is trimmed to its data");
+		q.release();
+		
+		FileDiskQueue reopened = new FileDiskQueue(file.toString(), options);
+		assertEquals(6, reopened.size(), "zero padding is not read as records");
+		reopened.append("r06");
+		for(int i=0; i<7; i++) {
+			assertEquals(String.format("r%02d", i), reopened.poll().message());
+		}
+		assertNull(reopened.poll());
+		reopened.close();
+	}
+	
+	private static void flipByte(Path file, long offset) throws IOException {
+		try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer b = ByteBuffer.allocate(1);
+			ch.read(b, offset);
+			b.put(0, (byte) ~b.get(0));
+			ch.write(b.rewind(), offset);
+		}
+	}
 }
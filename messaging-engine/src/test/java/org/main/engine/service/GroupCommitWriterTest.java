@@ -0,0 +1,102 @@
+package org.main.engine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.main.engine.dto.DiskRecord;
+
+public class GroupCommitWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void concurrentAppends_shouldAllBeWritten_andDurable() throws Exception {
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString());
+		GroupCommitWriter writer = GroupCommitWriter.start(q, FlushPolicy.always());
+
+		int producers = 8;
+		int perProducer = 50;
+		CountDownLatch start = new CountDownLatch(1);
+		List<CompletableFuture<Long>> futures = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+
+		for(int p=0; p<producers; p++) {
+			int producer = p;
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					for(int i=0; i<perProducer; i++) {
+						futures.add(writer.append(producer + "-" + i));
+					}
+				}catch(Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		start.countDown();
+		for(Thread t: threads) t.join();
+
+		for(CompletableFuture<Long> f: futures) {
+			assertTrue(f.isDone(), "always-flush futures complete on return");
+		}
+
+		Set<String> seen = new HashSet<>();
+		DiskRecord rec;
+		while((rec = q.poll()) != null) {
+			seen.add(rec.message());
+		}
+		assertEquals(producers * perProducer, seen.size());
+
+		writer.close();
+		q.close();
+	}
+
+	@Test
+	void timeBasedPolicy_shouldCompleteFutureWithoutFurtherAppends() throws Exception {
+		FlushPolicy policy = FlushPolicy.everyMillis(20);
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(policy));
+		GroupCommitWriter writer = GroupCommitWriter.start(q, policy);
+
+		CompletableFuture<Long> durable = writer.append("A");
+		assertFalse(durable.isCompletedExceptionally());
+
+		long pos = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> durable.get());
+		assertEquals(q.durablePosition(), pos);
+
+		writer.close();
+		q.close();
+	}
+
+	@Test
+	void recordCountPolicy_shouldFlushTailOnceAppendsPause() throws Exception {
+		FlushPolicy policy = FlushPolicy.everyRecords(1000);
+		FileDiskQueue q = new FileDiskQueue(tempDir.resolve("q.bin").toString(),
+				DiskQueueOptions.defaults().withFlushPolicy(policy));
+		GroupCommitWriter writer = GroupCommitWriter.start(q, policy, "test-flusher");
+
+		CompletableFuture<Long> tail = writer.append("A");
+
+		long pos = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> tail.get());
+		assertEquals(q.durablePosition(), pos);
+
+		writer.close();
+		q.close();
+	}
+}
@@ -0,0 +1,87 @@
+package org.main.engine.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.main.engine.dto.DiskRecord;
+
+public class PartitionedDiskQueueTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void append_shouldRouteByKey_andKeepPerKeyOrder() throws Exception {
+		String file = tempDir.resolve("q.bin").toString();
+		PartitionedDiskQueue q = new PartitionedDiskQueue(file, 4, DiskQueueOptions.defaults());
+
+		Set<Integer> used = new HashSet<>();
+		for(int i=0; i<10; i++) {
+			for(int k=0; k<8; k++) {
+				String key = "key-" + k;
+				int partition = q.partitionFor(key);
+				used.add(partition);
+				q.partition(partition).append(key + ":" + i);
+			}
+		}
+		assertTrue(used.size() > 1, "keys should spread over partitions");
+		assertEquals(80, q.size());
+		assertFalse(q.isEmpty());
+
+		for(int k=0; k<8; k++) {
+			String key = "key-" + k;
+			List<String> seen = new ArrayList<>();
+			for(DiskRecord rec: q.partition(q.partitionFor(key)).pollBatch(100, Long.MAX_VALUE)) {
+				if(rec.message().startsWith(key + ":")) {
+					seen.add(rec.message());
+				}
+			}
+			// re-read the partition for the next key
+			q.partition(q.partitionFor(key)).seek(0);
+
+			assertEquals(10, seen.size());
+			for(int i=0; i<10; i++) {
+				assertEquals(key + ":" + i, seen.get(i));
+			}
+		}
+
+		q.close();
+		assertTrue(Files.notExists(tempDir.resolve("q.bin.p0")));
+	}
+
+	@Test
+	void open_withDifferentPartitionCount_shouldFail_untilFilesAreDeleted() throws Exception {
+		String file = tempDir.resolve("q.bin").toString();
+		PartitionedDiskQueue four = new PartitionedDiskQueue(file, 4, DiskQueueOptions.defaults());
+		four.partition(3).append("pending");
+		four.partition(3).flush();
+
+		assertThrows(IOException.class, () -> new PartitionedDiskQueue(file, 2, DiskQueueOptions.defaults()));
+		assertThrows(IOException.class, () -> new PartitionedDiskQueue(file, 1, DiskQueueOptions.defaults()));
+		// Growing would route keys away from their backlog as well
+		assertThrows(IOException.class, () -> new PartitionedDiskQueue(file, 8, DiskQueueOptions.defaults()));
+		assertThrows(IOException.class, () -> new PartitionedDiskQueue(file, 5, DiskQueueOptions.defaults()));
+
+		for(int p=0; p<4; p++) {
+			four.partition(p).release();
+		}
+		PartitionedDiskQueue.deleteFiles(file);
+
+		PartitionedDiskQueue one = new PartitionedDiskQueue(file, 1, DiskQueueOptions.defaults());
+		assertTrue(one.isEmpty());
+		assertTrue(Files.exists(Path.of(file)));
+		one.close();
+	}
+}
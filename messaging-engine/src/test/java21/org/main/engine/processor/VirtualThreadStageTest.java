@@ -0,0 +1,45 @@
+package org.main.engine.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadStageTest {
+
+	@Test
+	void blockingTasks_shouldAllRunAtOnce_upToThePermitBudget() throws Exception {
+		int budget = 2_000;
+		ExecutionStage stage = ExecutionStage.create(StageType.VIRTUAL_THREADS, 4, budget - 4, WaitStrategy.PARK);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(budget);
+
+		assertEquals(budget, stage.tryReserveUpTo(Integer.MAX_VALUE));
+		for(int i=0; i<budget; i++) {
+			stage.execute(() -> {
+				peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(200);
+				}catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}finally {
+					running.decrementAndGet();
+					stage.release(1);
+					done.countDown();
+				}
+			});
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(peak.get() > budget / 2, "blocking tasks should overlap, peak was " + peak.get());
+		assertTrue(stage.isIdle());
+
+		stage.shutdown();
+		assertTrue(stage.awaitTermination(1, TimeUnit.SECONDS));
+	}
+}